@@ -29,6 +29,39 @@ import static uk.ac.bris.cs.scotlandyard.ui.ai.minimax.archive.MinimaxStrategy.i
  */
 public class Client implements Ai {
 
+    /**
+     * The system property that sets the safety margin of a client made with the no-argument constructor
+     */
+    public static final String SAFETY_MARGIN_PROPERTY = "scotlandyard.ai.safetyMargin";
+
+    /**
+     * The safety margin used when none is given
+     */
+    public static final double DEFAULT_SAFETY_MARGIN = 0.15;
+
+    // The fraction of the timeout that we keep back, so that the move is returned in time even on a slow machine
+    private final double safetyMargin;
+
+    // Kept between moves so that the strategy can carry on from the search it did on the previous move
+    private MoveSelectingStrategy strategy = new MonteCarloFactory().getMoveSelectingStrategy();
+
+    /**
+     * Constructor for the client that the game uses. The safety margin is read from the
+     * {@value #SAFETY_MARGIN_PROPERTY} system property, or is {@value #DEFAULT_SAFETY_MARGIN} if it is not set.
+     */
+    public Client() {
+        this(Double.parseDouble(System.getProperty(SAFETY_MARGIN_PROPERTY, String.valueOf(DEFAULT_SAFETY_MARGIN))));
+    }
+
+    /**
+     * Constructor for a client with a particular safety margin
+     * @param safetyMargin The fraction of each timeout to keep back for returning the move, between 0 and 1
+     */
+    public Client(double safetyMargin) {
+        if (safetyMargin < 0 || safetyMargin >= 1) throw new IllegalArgumentException("Invalid safety margin: " + safetyMargin);
+        this.safetyMargin = safetyMargin;
+    }
+
     @Nonnull
     @Override
     public String name() {
@@ -37,11 +70,13 @@ public class Client implements Ai {
 
     @Override
     public void onStart() {
+        strategy = new MonteCarloFactory().getMoveSelectingStrategy();
     }
 
     @Nonnull
     @Override
     public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+        Deadline deadline = Deadline.fromTimeout(timeoutPair, safetyMargin);
         SimulationGameState simGameState = new SimulationGameState(board);
 
         if (simGameState.getMrX().location() == -1) {
@@ -54,13 +89,13 @@ public class Client implements Ai {
         }
 
         //MONTE CARLO TREE SEARCH
-        return new MoveSelector().chooseMove(new MonteCarloFactory().getMoveSelectingStrategy(), board);
+        return new MoveSelector().chooseMove(strategy, board, deadline);
 
         //MINIMAX
-//        return new MoveSelector().chooseMove(new MinimaxFactory().getMoveSelectingStrategy(), board);
+//        return new MoveSelector().chooseMove(new MinimaxFactory().getMoveSelectingStrategy(), board, deadline);
 
         //PSO
-//        return new MoveSelector().chooseMove(new ParticleSwarmFactory().getMoveSelectingStrategy(), board);
+//        return new MoveSelector().chooseMove(new ParticleSwarmFactory().getMoveSelectingStrategy(), board, deadline);
 
 
 
@@ -0,0 +1,69 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class representing the point in time by which a {@link MoveSelectingStrategy} has to have chosen a move. Searches
+ * check {@link #expired()} between units of work and return the best move found so far once it has passed.
+ */
+public final class Deadline {
+
+    /**
+     * A deadline that never expires, for searches that should run for their configured number of iterations
+     */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE, false);
+
+    private final long endNanos;
+    private final boolean bounded;
+
+    private Deadline(long endNanos, boolean bounded) {
+        this.endNanos = endNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * This function creates a deadline some time from now
+     * @param duration The amount of time until the deadline
+     * @param unit The unit of the duration
+     * @return The deadline
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(Math.max(duration, 0)), true);
+    }
+
+    /**
+     * This function creates a deadline from the timeout that the game gives the AI, keeping a safety margin back so
+     * that there is time to return the move (and to finish whatever unit of work is in progress).
+     * @param timeoutPair The timeout passed to {@link uk.ac.bris.cs.scotlandyard.model.Ai#pickMove}
+     * @param safetyMargin The fraction of the timeout to keep back, between 0 and 1
+     * @return The deadline
+     */
+    public static Deadline fromTimeout(Pair<Long, TimeUnit> timeoutPair, double safetyMargin) {
+        if (safetyMargin < 0 || safetyMargin >= 1) throw new IllegalArgumentException("Invalid safety margin: " + safetyMargin);
+        long timeoutNanos = timeoutPair.right().toNanos(timeoutPair.left());
+        return after((long) (timeoutNanos * (1 - safetyMargin)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Whether the deadline has passed; {@link #NONE} never expires
+     */
+    public boolean expired() {
+        return bounded && System.nanoTime() - endNanos >= 0;
+    }
+
+    /**
+     * @return Whether this deadline can expire, i.e. it is not {@link #NONE}
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @return The number of nanoseconds left until the deadline, which is never negative
+     */
+    public long remainingNanos() {
+        return bounded ? Math.max(endNanos - System.nanoTime(), 0) : Long.MAX_VALUE;
+    }
+}
@@ -22,4 +22,26 @@ public interface MoveSelectingStrategy {
      */
     Move selectForDetective(Board board);
 
+    /**
+     * Find the best move that can be found before a deadline, given that the initial player is MrX. Strategies that
+     * can stop early override this; by default the deadline is ignored.
+     * @param board the initial state of the game
+     * @param deadline the time by which the move has to be chosen
+     * @return best move found for the AI to execute
+     */
+    default Move selectForMrX(Board board, Deadline deadline) {
+        return selectForMrX(board);
+    }
+
+    /**
+     * Find the best move that can be found before a deadline, given that the initial player is a detective.
+     * Strategies that can stop early override this; by default the deadline is ignored.
+     * @param board the initial state of the game
+     * @param deadline the time by which the move has to be chosen
+     * @return best move found for the AI to execute
+     */
+    default Move selectForDetective(Board board, Deadline deadline) {
+        return selectForDetective(board);
+    }
+
 }
@@ -11,14 +11,18 @@ import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFun
 public class MoveSelector {
 
     public Move chooseMove(MoveSelectingStrategy strategy, Board board) {
+        return chooseMove(strategy, board, Deadline.NONE);
+    }
+
+    public Move chooseMove(MoveSelectingStrategy strategy, Board board, Deadline deadline) {
 
         if (isMrXTurn(board.getAvailableMoves())) {
             System.out.println(" -- MRX TURN --");
-            return strategy.selectForMrX(board);
+            return strategy.selectForMrX(board, deadline);
         }
         else {
             System.out.println(" -- DET TURN --");
-            return strategy.selectForDetective(board);
+            return strategy.selectForDetective(board, deadline);
         }
 
     }
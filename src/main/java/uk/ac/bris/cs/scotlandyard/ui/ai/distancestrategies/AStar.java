@@ -1,13 +1,11 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.graph.ImmutableValueGraph;
 import io.atlassian.fugue.Pair;
-import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompiledGraph;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.PriorityQueue;
 
 /*
@@ -55,39 +53,36 @@ public class AStar implements DistanceStrategy{
      */
     @Override
     public double findDistance(int source, int destination, SimulationGameState simGameState) {
-        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = simGameState.getSetup().graph;
+        CompiledGraph graph = CompiledGraph.of(simGameState.getSetup());
 
         PriorityQueue<Pair<Integer, Double>> remainingQueue = new PriorityQueue<>(Comparator.comparingDouble(Pair::right));
         remainingQueue.add(new Pair<>(source, 0.0));
 
-        HashMap<Integer, Boolean> visited = new HashMap<>();
+        boolean[] visited = new boolean[graph.maxNode() + 1];
 
-        HashMap<Integer, Integer> currentDistance = new HashMap<>();
+        int[] currentDistance = new int[graph.maxNode() + 1];
+        Arrays.fill(currentDistance, Integer.MAX_VALUE);
 
-        for (int node : graph.nodes()) {
-            currentDistance.put(node, Integer.MAX_VALUE);
-            visited.put(node, Boolean.FALSE);
-        }
-
-        visited.put(source, Boolean.TRUE);
-        currentDistance.put(source, 0);
+        visited[source] = true;
+        currentDistance[source] = 0;
 
         while (!remainingQueue.isEmpty()) {
-            Pair<Integer, Double> currentNode = remainingQueue.poll();
+            int currentNode = remainingQueue.poll().left();
 
-            for (Integer neighbour : graph.adjacentNodes(currentNode.left())) {
-                int newCost = currentDistance.get(currentNode.left()) + 1;
+            for (int edge = graph.start(currentNode); edge < graph.end(currentNode); edge++) {
+                int neighbour = graph.neighbour(edge);
+                int newCost = currentDistance[currentNode] + 1;
 
-                if (!visited.get(neighbour) || newCost < currentDistance.get(neighbour)) {
+                if (!visited[neighbour] || newCost < currentDistance[neighbour]) {
 
-                    currentDistance.put(neighbour, newCost);
+                    currentDistance[neighbour] = newCost;
                     //adds the difference of node numbers to introduce a heuristic in the priority queue
                     remainingQueue.add(new Pair<>(neighbour, newCost+heuristic(neighbour, destination)));
-                    visited.put(neighbour, Boolean.TRUE);
+                    visited[neighbour] = true;
                 }
             }
         }
 
-        return currentDistance.get(destination);
+        return currentDistance[destination];
     }
 }
@@ -1,13 +1,11 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.graph.ImmutableValueGraph;
 import io.atlassian.fugue.Pair;
-import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompiledGraph;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.PriorityQueue;
 
 /*
@@ -43,53 +41,51 @@ public class Dijkstra implements DistanceStrategy {
      */
     @Override
     public double findDistance(int source, int destination, SimulationGameState simGameState) {
-        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = simGameState.getSetup().graph;
+        CompiledGraph graph = CompiledGraph.of(simGameState.getSetup());
 
         //queue to indicate which node to explore next based on current distance
         //elements stored as: Pair(Node number, currentDistance)
         PriorityQueue<Pair<Integer, Integer>> remainingQueue = new PriorityQueue<>(Comparator.comparingInt(Pair::right));
         remainingQueue.add(new Pair<>(source, 0));
 
-        //hashmap to check if a node is looked up
+        //array to check if a node is looked up
         //elements stored as:  Node number -> is node visited?
-        HashMap<Integer, Boolean> visited = new HashMap<>();
+        boolean[] visited = new boolean[graph.maxNode() + 1];
 
-        //hashmap for fast lookup of the distance from the source to any given node on the graph.
+        //array for fast lookup of the distance from the source to any given node on the graph.
         //elements stored as: Node number -> current distance
-        HashMap<Integer, Integer> currentDistance = new HashMap<>();
+        int[] currentDistance = new int[graph.maxNode() + 1];
 
-        //initialize the hashmaps
-        for (int node : graph.nodes()) {
-            currentDistance.put(node, Integer.MAX_VALUE);
-            visited.put(node, Boolean.FALSE);
-        }
+        //initialize the distances
+        Arrays.fill(currentDistance, Integer.MAX_VALUE);
 
-        visited.put(source, Boolean.TRUE);
-        currentDistance.put(source, 0);
+        visited[source] = true;
+        currentDistance[source] = 0;
 
         //perform BFS but only consider neighbour nodes if the added distance is lower than the current distance
 
         while (!remainingQueue.isEmpty()) {
             //pop out the top of the priority queue which should have the smallest score
-            Pair<Integer, Integer> currentNode = remainingQueue.poll();
+            int currentNode = remainingQueue.poll().left();
             //find all the adjacent/neighbouring nodes
-            for (Integer neighbour : graph.adjacentNodes(currentNode.left())) {
+            for (int edge = graph.start(currentNode); edge < graph.end(currentNode); edge++) {
+                int neighbour = graph.neighbour(edge);
                 //add one to the cost as we have traversed an edge to get to the neighbour
-                int newCost = currentDistance.get(currentNode.left()) + 1;
+                int newCost = currentDistance[currentNode] + 1;
 
                 //if the neighbour is not visited or the new distance travelled is smaller than the current smallest path
-                if (!visited.get(neighbour) || newCost < currentDistance.get(neighbour)) {
-                    //update the hashmap that stores the distances
-                    currentDistance.put(neighbour, newCost);
+                if (!visited[neighbour] || newCost < currentDistance[neighbour]) {
+                    //update the array that stores the distances
+                    currentDistance[neighbour] = newCost;
                     //put the neighbour onto the priority queue to continue the path
                     remainingQueue.add(new Pair<>(neighbour, newCost));
                     //mark the neighbour as being visited
-                    visited.put(neighbour, Boolean.TRUE);
+                    visited[neighbour] = true;
                 }
             }
         }
 
-        //get the distance from the distance hashmap
-        return currentDistance.get(destination);
+        //get the distance from the distance array
+        return currentDistance[destination];
     }
 }
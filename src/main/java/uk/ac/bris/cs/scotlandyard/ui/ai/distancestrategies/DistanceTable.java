@@ -0,0 +1,129 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies;
+
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.GraphCache;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Class holding the distance between every pair of nodes on a graph for one {@link Variant}. The table is built once
+ * per graph by searching from every source in parallel, after which a distance is a single array lookup. The tables
+ * are cached in the same way as the compiled graph, see {@link GraphCache}.
+ */
+public final class DistanceTable {
+
+    /**
+     * The cost models that a table can be built for. Each variant gives exactly the same distances as the
+     * {@link DistanceStrategy} it is named after.
+     */
+    public enum Variant {
+        /**
+         * Every edge costs 1, as in {@link Dijkstra}.
+         */
+        DIJKSTRA {
+            @Override
+            int edgeCost(CompiledGraph graph, int from, int edge) {
+                return 1;
+            }
+        },
+        /**
+         * Edges cost less the more transports run along them and the closer the node numbers are, as in
+         * {@link GreedyAStar}.
+         */
+        GREEDY_A_STAR {
+            @Override
+            int edgeCost(CompiledGraph graph, int from, int edge) {
+                int maxEdgeValue = 20;
+                return (maxEdgeValue - graph.transportCount(edge)) + Math.abs(from - graph.neighbour(edge));
+            }
+        };
+
+        abstract int edgeCost(CompiledGraph graph, int from, int edge);
+    }
+
+    private static final Map<Variant, GraphCache<CompiledGraph, DistanceTable>> caches = new EnumMap<>(Variant.class);
+
+    static {
+        for (Variant variant : Variant.values()) {
+            caches.put(variant, new GraphCache<>(graph -> new DistanceTable(graph, variant)));
+        }
+    }
+
+    private final CompiledGraph graph;
+    private final int size;
+    private final int[] distances; // distances[source * size + destination]
+
+    /**
+     * This function gets the table for a graph and variant, building it the first time it is asked for.
+     * @param graph The compiled game graph
+     * @param variant The cost model to use
+     * @return The distance table
+     */
+    public static DistanceTable of(CompiledGraph graph, Variant variant) {
+        return caches.get(variant).get(graph);
+    }
+
+    private DistanceTable(CompiledGraph graph, Variant variant) {
+        this.graph = graph;
+        this.size = graph.maxNode() + 1;
+        this.distances = new int[size * size];
+
+        // Every source is independent, so they are searched in parallel and each fills its own row
+        IntStream.range(1, size).parallel().forEach(source -> fillRow(source, variant));
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a source and writes the distances to every node into the source's row. The graph
+     * only has ~200 nodes, so picking the closest node with a linear scan is fast enough and avoids a priority queue.
+     * @param source The source node
+     * @param variant The cost model to use
+     */
+    private void fillRow(int source, Variant variant) {
+        int row = source * size;
+        boolean[] done = new boolean[size];
+        Arrays.fill(distances, row, row + size, Integer.MAX_VALUE);
+        distances[row + source] = 0;
+
+        while (true) {
+            int current = -1;
+            for (int node = 1; node < size; node++) {
+                if (!done[node] && distances[row + node] != Integer.MAX_VALUE
+                        && (current == -1 || distances[row + node] < distances[row + current])) {
+                    current = node;
+                }
+            }
+            if (current == -1) {
+                break;
+            }
+            done[current] = true;
+
+            for (int edge = graph.start(current); edge < graph.end(current); edge++) {
+                int next = graph.neighbour(edge);
+                int cost = distances[row + current] + variant.edgeCost(graph, current, edge);
+                if (cost < distances[row + next]) {
+                    distances[row + next] = cost;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param graph A compiled graph
+     * @return Whether this table was built for the graph
+     */
+    public boolean isFor(CompiledGraph graph) {
+        return this.graph == graph;
+    }
+
+    /**
+     * @param source The source node
+     * @param destination The destination node
+     * @return The distance between the nodes, or {@link Integer#MAX_VALUE} if the destination cannot be reached
+     */
+    public int distance(int source, int destination) {
+        return distances[source * size + destination];
+    }
+}
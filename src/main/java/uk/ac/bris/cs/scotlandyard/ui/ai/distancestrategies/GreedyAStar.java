@@ -1,13 +1,11 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.graph.ImmutableValueGraph;
 import io.atlassian.fugue.Pair;
-import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompiledGraph;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.PriorityQueue;
 
 /*
@@ -47,44 +45,42 @@ public class GreedyAStar implements DistanceStrategy {
     @Override
     public double findDistance(int source, int destination, SimulationGameState board) {
 
-        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = board.getSetup().graph;
+        CompiledGraph graph = CompiledGraph.of(board.getSetup());
         int maxEdgeValue = 20;
 
         PriorityQueue<Pair<Integer, Integer>> q = new PriorityQueue<>(Comparator.comparingInt(Pair::right));
-        HashMap<Integer, Boolean> visited = new HashMap<>();
-        HashMap<Integer, Integer> currentCost = new HashMap<>();
+        boolean[] visited = new boolean[graph.maxNode() + 1];
+        int[] currentCost = new int[graph.maxNode() + 1];
 
         q.add(new Pair<>(source, 0));
-        for (int node : graph.nodes()) {
-            currentCost.put(node, Integer.MAX_VALUE);
-            visited.put(node, Boolean.FALSE);
-        }
+        Arrays.fill(currentCost, Integer.MAX_VALUE);
 
-        currentCost.put(source, 0);
-        visited.put(source, Boolean.TRUE);
+        currentCost[source] = 0;
+        visited[source] = true;
 
         while (!q.isEmpty()) {
 
-            Pair<Integer, Integer> current = q.poll();
+            int current = q.poll().left();
 
             //greedy due to early exit
-            if (current.left() == destination) {
+            if (current == destination) {
                 break;
             }
-            for (int next : graph.adjacentNodes(current.left())) {
+            for (int edge = graph.start(current); edge < graph.end(current); edge++) {
+                int next = graph.neighbour(edge);
 
                 //calculates the cost using the absolute difference and number of node connections
                 //ie. integrates the heuristic into A*
-                int cost = currentCost.get(current.left()) + (maxEdgeValue - graph.edgeValue(current.left(), next).get().size()) + Math.abs(current.left() - next);
+                int cost = currentCost[current] + (maxEdgeValue - graph.transportCount(edge)) + Math.abs(current - next);
 
-                if (!visited.get(next) || cost < currentCost.get(next)) {
-                    currentCost.replace(next, cost);
+                if (!visited[next] || cost < currentCost[next]) {
+                    currentCost[next] = cost;
                     q.add(new Pair<>(next, cost));
-                    visited.put(next, Boolean.TRUE);
+                    visited[next] = true;
                 }
             }
         }
 
-        return currentCost.get(destination);
+        return currentCost[destination];
     }
 }
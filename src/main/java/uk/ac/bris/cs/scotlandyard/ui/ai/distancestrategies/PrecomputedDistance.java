@@ -0,0 +1,49 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies;
+
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+/*
+Evaluation of using a precomputed table:
+(+) a distance is a single array lookup, so scoring no longer runs a search for every detective
+(+) gives exactly the same distances as Dijkstra or greedy A* depending on the variant
+
+(-) the table for every pair of nodes has to be built before the first lookup
+(-) only works for cost models that do not depend on the game state, such as the tickets that a player has
+ */
+
+/**
+ * Class that looks up distances in a {@link DistanceTable} that is built once per graph. Implements
+ * {@link DistanceStrategy}.
+ */
+public class PrecomputedDistance implements DistanceStrategy {
+
+    private final DistanceTable.Variant variant;
+    private volatile DistanceTable table;
+
+    /**
+     * Constructor for a precomputed distance strategy
+     * @param variant Which distance strategy's semantics the table should have
+     */
+    public PrecomputedDistance(DistanceTable.Variant variant) {
+        this.variant = variant;
+    }
+
+    /**
+     * Looks up the distance between two nodes in the table for the game graph
+     * @param source node number of the source
+     * @param destination node number of the destination
+     * @param simGameState simulation game state whose graph is used
+     * @return distance between the nodes under the chosen variant
+     */
+    @Override
+    public double findDistance(int source, int destination, SimulationGameState simGameState) {
+        CompiledGraph graph = simGameState.getCompactState().getGraph();
+        DistanceTable current = table;
+        if (current == null || !current.isFor(graph)) {
+            current = DistanceTable.of(graph, variant);
+            table = current;
+        }
+        return current.distance(source, destination);
+    }
+}
@@ -4,7 +4,8 @@ import uk.ac.bris.cs.scotlandyard.ui.ai.MoveSelectingStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.AStar;
 import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.Dijkstra;
-import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
 import uk.ac.bris.cs.scotlandyard.ui.ai.minimax.MinimaxFinal;
 import uk.ac.bris.cs.scotlandyard.ui.ai.minimax.archive.MinimaxStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies.FastScorer;
@@ -35,7 +36,7 @@ public class MinimaxFactory implements AbstractFactory {
 
     public MinimaxFactory() {
         this.depth = 6;
-        this.scoringStrategy = new FastScorer(new GreedyAStar());
+        this.scoringStrategy = new FastScorer(new PrecomputedDistance(DistanceTable.Variant.GREEDY_A_STAR));
         this.detectiveTopNMoves = 1;
         this.mrXTopNMoves = 4;
     }
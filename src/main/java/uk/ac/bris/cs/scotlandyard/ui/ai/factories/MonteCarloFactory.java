@@ -1,6 +1,7 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.factories;
 
 import uk.ac.bris.cs.scotlandyard.ui.ai.MoveSelectingStrategy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.MCOptions;
 import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.MCStrategy;
 
 /**
@@ -13,16 +14,31 @@ public class MonteCarloFactory implements AbstractFactory {
     private final int numSims;
     private final int treeIters;
     private final int lookAhead;
+    private final MCOptions options;
 
     /**
      *
      * @param initExplorationCost The exploration cost to use in Monte Carlo
-     * @param numParallelStrategies The number of parallel MonteCarlo instances to run
+     * @param numParallelStrategies The number of independent Monte Carlo trees to build in parallel
      * @param numSims The number of simulations to average each time (in Simulator)
-     * @param treeIters The number of times to rollout when building tree
+     * @param treeIters The number of times to rollout for each move, split between the threads
      * @param lookAhead the number of lookaheads
      */
     public MonteCarloFactory(double initExplorationCost, int numParallelStrategies, int numSims, int treeIters, int lookAhead) {
+        this(initExplorationCost, numParallelStrategies, numSims, treeIters, lookAhead, MCOptions.DEFAULT);
+    }
+
+    /**
+     *
+     * @param initExplorationCost The exploration cost to use in Monte Carlo
+     * @param numParallelStrategies The number of threads to search with
+     * @param numSims The number of simulations to average each time (in Simulator)
+     * @param treeIters The number of times to rollout for each move, split between the threads
+     * @param lookAhead the number of moves after which the rollouts are cut short, if there is a leaf evaluator
+     * @param options How the threads share the search, how the trees are stored, and how the trees are searched
+     */
+    public MonteCarloFactory(double initExplorationCost, int numParallelStrategies, int numSims, int treeIters, int lookAhead, MCOptions options) {
+        this.options = options;
         this.initExplorationCost = initExplorationCost;
         this.numParallelStrategies = numParallelStrategies;
         this.numSims = numSims;
@@ -39,10 +55,11 @@ public class MonteCarloFactory implements AbstractFactory {
         this.numSims = 1;
         this.treeIters = 8000;
         this.lookAhead = 8;
+        this.options = MCOptions.DEFAULT;
     }
 
     @Override
     public MoveSelectingStrategy getMoveSelectingStrategy() {
-        return new MCStrategy(initExplorationCost, numParallelStrategies, numSims, treeIters, lookAhead);
+        return new MCStrategy(initExplorationCost, numParallelStrategies, numSims, treeIters, lookAhead, options);
     }
 }
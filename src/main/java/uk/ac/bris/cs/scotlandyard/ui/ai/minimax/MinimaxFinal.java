@@ -4,6 +4,7 @@ import io.atlassian.fugue.Pair;
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.MoveSelectingStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.factories.MonteCarloFactory;
@@ -25,6 +26,8 @@ public class MinimaxFinal implements MoveSelectingStrategy{
     ScoringStrategy scoringStrategy;
     int mrXTopNMoves;
     int detectiveTopNMoves;
+    // Shared by every root move task, and kept between turns as later turns search many of the same positions
+    TranspositionTable table = new TranspositionTable(20, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
 
     /**
      *
@@ -143,34 +146,88 @@ public class MinimaxFinal implements MoveSelectingStrategy{
      */
     @Override
     public Move selectForMrX(Board board) {
-        SimulationGameState s = new SimulationGameState(board);
-
-        double max = Double.NEGATIVE_INFINITY;
-        Move bestMove = s.getAvailableMoves().stream().findFirst().orElseThrow();
-        double eval = 0;
+        return selectForMrX(board, Deadline.NONE);
+    }
 
-        // Load the thread pool
-        ExecutorService threads = Executors.newCachedThreadPool();
+    /**
+     * Selects the best move for the detective
+     * @param board
+     * @return
+     */
+    @Override
+    public Move selectForDetective(Board board) {
+        return selectForDetective(board, Deadline.NONE);
+    }
 
+    /**
+     * Runs minimax from every child of the root in parallel.
+     * @param threads The thread pool to run the searches on
+     * @param s The root game state
+     * @param depth The depth to search each child to
+     * @param deadline The time by which the searches have to finish
+     * @return The results of the searches, or null if they ran out of time
+     * @throws InterruptedException If we are interrupted while waiting for the searches
+     */
+    private List<Future<Pair<Move, Double>>> searchRootMoves(ExecutorService threads, SimulationGameState s, int depth, Deadline deadline) throws InterruptedException {
         ArrayList<MinimaxServiceFinal> tasks = new ArrayList<>();
 
         for (Move m : s.getAvailableMoves()) {
             SimulationGameState advanced = s.copy(s).advance(m);
-            // We filter out moves that result in a position where Mr X can be caught; unless there are no other
-            // possible moves.
-            tasks.add(new MinimaxServiceFinal(advanced, depth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, scoringStrategy, m, mrXTopNMoves, detectiveTopNMoves));
+            tasks.add(new MinimaxServiceFinal(advanced, depth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, scoringStrategy, m, mrXTopNMoves, detectiveTopNMoves, table, deadline));
         }
 
+        List<Future<Pair<Move, Double>>> results = threads.invokeAll(tasks);
+        for (Future<Pair<Move, Double>> f : results) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) {
+                    return null;
+                }
+                throw new RuntimeException(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Selects the best move for Mr X that can be found before the deadline. If there is a deadline, then we deepen
+     * iteratively so that there is always a complete search to fall back on when time runs out.
+     * @param board
+     * @param deadline
+     * @return
+     */
+    @Override
+    public Move selectForMrX(Board board, Deadline deadline) {
+        SimulationGameState s = new SimulationGameState(board);
+
+        double max = Double.NEGATIVE_INFINITY;
+        Move bestMove = s.getAvailableMoves().stream().findFirst().orElseThrow();
+
+        table.newSearch();
+
+        // Load the thread pool
+        ExecutorService threads = Executors.newCachedThreadPool();
+
         try {
-            List<Future<Pair<Move, Double>>> results = threads.invokeAll(tasks);
+            for (int d = deadline.isBounded() ? 1 : depth; d <= depth; d++) {
+                List<Future<Pair<Move, Double>>> results = searchRootMoves(threads, s, d, deadline);
+                if (results == null) {
+                    System.out.println("Out of time, using the search to depth " + (d - 1));
+                    break;
+                }
 
-            List<Pair<Move, Double>> processed = convertDupMovesToMostEff(results);
+                // We filter out moves that result in a position where Mr X can be caught; unless there are no other
+                // possible moves.
+                List<Pair<Move, Double>> processed = convertDupMovesToMostEff(results);
 
-            for (Pair<Move, Double> f : processed) {
-                if (f.right() >= max) {
-                    // compare and update the score
-                    bestMove = f.left();
-                    max = f.right();
+                max = Double.NEGATIVE_INFINITY;
+                for (Pair<Move, Double> f : processed) {
+                    if (f.right() >= max) {
+                        // compare and update the score
+                        bestMove = f.left();
+                        max = f.right();
+                    }
                 }
             }
             threads.shutdownNow();
@@ -181,46 +238,50 @@ public class MinimaxFinal implements MoveSelectingStrategy{
 
         System.out.println("Difference in Score: Initial Score: " + scoringStrategy.score(s) + " New Score: " + max);
 
-        if (max - scoringStrategy.score(s) < -1000) {
-            // There is no good move at this position. To proceed we will use MCTS.
+        if (max - scoringStrategy.score(s) < -1000 && !deadline.expired()) {
+            // There is no good move at this position. To proceed we will use MCTS with whatever time is left.
             System.out.println("EMERGENCY!! There is no good move at this position. We use MCTS instead...");
             System.out.println("this is probably only barely going to complete, cross your fingers ;)");
-            return new MonteCarloFactory().getMoveSelectingStrategy().selectForMrX(board);
+            return new MonteCarloFactory().getMoveSelectingStrategy().selectForMrX(board, deadline);
         }
         return bestMove;
 
     }
 
     /**
-     * Selects the best move for the detective
+     * Selects the best move for the detective that can be found before the deadline. If there is a deadline, then we
+     * deepen iteratively so that there is always a complete search to fall back on when time runs out.
      * @param board
+     * @param deadline
      * @return
      */
     @Override
-    public Move selectForDetective(Board board) {
+    public Move selectForDetective(Board board, Deadline deadline) {
         SimulationGameState s = new SimulationGameState(board);
 
         double min = Double.POSITIVE_INFINITY;
         Move bestMove = s.getAvailableMoves().stream().findFirst().orElseThrow();
-        double eval = 0;
 
-        ExecutorService threads = Executors.newCachedThreadPool();
-
-        ArrayList<MinimaxServiceFinal> tasks = new ArrayList<>();
+        table.newSearch();
 
-        // Calculate minimax on each child move
-        for (Move m : s.getAvailableMoves()) {
-            SimulationGameState advanced = s.copy(s).advance(m);
-            tasks.add(new MinimaxServiceFinal(advanced, depth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, scoringStrategy, m, mrXTopNMoves, detectiveTopNMoves));
-        }
+        ExecutorService threads = Executors.newCachedThreadPool();
 
         try {
-            List<Future<Pair<Move, Double>>> results = threads.invokeAll(tasks);
-            for (Future<Pair<Move, Double>> f : results) {
-                if (f.get().right() <= min) {
-                    // compare and update the score
-                    bestMove = f.get().left();
-                    min = f.get().right();
+            // Calculate minimax on each child move
+            for (int d = deadline.isBounded() ? 1 : depth; d <= depth; d++) {
+                List<Future<Pair<Move, Double>>> results = searchRootMoves(threads, s, d, deadline);
+                if (results == null) {
+                    System.out.println("Out of time, using the search to depth " + (d - 1));
+                    break;
+                }
+
+                min = Double.POSITIVE_INFINITY;
+                for (Future<Pair<Move, Double>> f : results) {
+                    if (f.get().right() <= min) {
+                        // compare and update the score
+                        bestMove = f.get().left();
+                        min = f.get().right();
+                    }
                 }
             }
             threads.shutdownNow();
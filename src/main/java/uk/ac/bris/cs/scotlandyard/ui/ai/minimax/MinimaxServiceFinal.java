@@ -2,13 +2,14 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.minimax;
 
 import io.atlassian.fugue.Pair;
 import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
 /**
  * Minimax service class that is used to implement multithreading for Minimax.
@@ -28,6 +29,8 @@ public class MinimaxServiceFinal implements Callable<Pair<Move, Double>> {
     Move move;
     int mrXTopNMoves;
     int detectiveTopNMoves;
+    TranspositionTable table;
+    Deadline deadline;
 
     /**
      * Computes a result, or throws an exception if unable to do so.
@@ -52,6 +55,24 @@ public class MinimaxServiceFinal implements Callable<Pair<Move, Double>> {
      * @param detectiveTopNMoves How many of the top moves to consider for the detectives
      */
     public MinimaxServiceFinal(SimulationGameState board, int depth, double alpha, double beta, ScoringStrategy scorer, Move move, int mrXTopNMoves, int detectiveTopNMoves) {
+        this(board, depth, alpha, beta, scorer, move, mrXTopNMoves, detectiveTopNMoves, null, Deadline.NONE);
+    }
+
+    /**
+     *
+     * @param board {@link SimulationGameState} to start minimax from
+     * @param depth The depth of minimax from this point
+     * @param alpha
+     * @param beta
+     * @param scorer The {@link ScoringStrategy} to use to score minimax
+     * @param move The parent {@link Move} that led to this position
+     * @param mrXTopNMoves How many of the top moves to consider for mr X
+     * @param detectiveTopNMoves How many of the top moves to consider for the detectives
+     * @param table The {@link TranspositionTable} to share with the other tasks, or null to search without one
+     * @param deadline The time by which the search has to finish; after it, the search throws a
+     *                 {@link CancellationException}
+     */
+    public MinimaxServiceFinal(SimulationGameState board, int depth, double alpha, double beta, ScoringStrategy scorer, Move move, int mrXTopNMoves, int detectiveTopNMoves, TranspositionTable table, Deadline deadline) {
         this.scorer = scorer;
         this.board = board;
         this.depth = depth;
@@ -60,6 +81,8 @@ public class MinimaxServiceFinal implements Callable<Pair<Move, Double>> {
         this.move = move;
         this.mrXTopNMoves = mrXTopNMoves;
         this.detectiveTopNMoves = detectiveTopNMoves;
+        this.table = table;
+        this.deadline = deadline;
     }
 
     /**
@@ -67,9 +90,73 @@ public class MinimaxServiceFinal implements Callable<Pair<Move, Double>> {
      * @return
      */
     public double minimax() {
+        return minimax(depth, alpha, beta);
+    }
+
+    /**
+     * Performs minimax on {@link #board}. Children are visited by applying their move to the board and undoing it
+     * afterwards, so the whole search uses the single game state that this service was given.
+     * @param depth The depth of minimax from this point
+     * @param alpha
+     * @param beta
+     * @return The score of the position
+     */
+    private double minimax(int depth, double alpha, double beta) {
+        if (deadline.expired()) {
+            throw new CancellationException("Minimax ran out of time");
+        }
         if (depth == 0 || !board.getWinner().isEmpty()) {
             return scorer.score(board);
         }
+        if (table == null) {
+            return search(depth, alpha, beta, null, new Move[1]);
+        }
+
+        // If this position has already been searched deeply enough (possibly by another task, through a different
+        // move order), then we can use its result instead of searching it again.
+        long key = board.getZobristKey();
+        TranspositionTable.Entry entry = table.probe(key);
+        if (entry != null && entry.depth() >= depth) {
+            switch (entry.bound()) {
+                case EXACT -> {
+                    return entry.score();
+                }
+                case LOWER -> alpha = Double.max(alpha, entry.score());
+                case UPPER -> beta = Double.min(beta, entry.score());
+            }
+            if (alpha >= beta) {
+                return entry.score();
+            }
+        }
+
+        double originalAlpha = alpha;
+        double originalBeta = beta;
+        Move[] bestMove = new Move[1];
+        double val = search(depth, alpha, beta, entry == null ? null : entry.bestMove(), bestMove);
+
+        TranspositionTable.Bound bound;
+        if (val <= originalAlpha) {
+            bound = TranspositionTable.Bound.UPPER;
+        } else if (val >= originalBeta) {
+            bound = TranspositionTable.Bound.LOWER;
+        } else {
+            bound = TranspositionTable.Bound.EXACT;
+        }
+        table.store(key, depth, bound, val, bestMove[0]);
+        return val;
+    }
+
+    /**
+     * Searches the children of the current position, which must not be a leaf.
+     * @param depth The depth of minimax from this point
+     * @param alpha
+     * @param beta
+     * @param hashMove The best move found for this position by an earlier search, which is searched first if it is
+     *                 one of the moves we pursue; may be null
+     * @param bestMove Array whose only element is set to the best move that was searched
+     * @return The score of the position
+     */
+    private double search(int depth, double alpha, double beta, Move hashMove, Move[] bestMove) {
         if (SimulationUtilityFunctions.isMrXTurn(board.getAvailableMoves())) {
             double val = Double.NEGATIVE_INFINITY;
 
@@ -78,16 +165,16 @@ public class MinimaxServiceFinal implements Callable<Pair<Move, Double>> {
             // and only pursue the best ones.
             PriorityQueue<Pair<Move, Double>> selectedMoves = new PriorityQueue<>(Comparator.<Pair<Move, Double>>comparingDouble(d -> d.right()).reversed());
 
-            selectedMoves.addAll(board.getAvailableMoves()
-                    .stream()
-                    .<Pair<Move, Double>>map(m -> new Pair<>(m, scorer.score(board.copy(board).advance(m))))
-                    .toList());
+            selectedMoves.addAll(scoreChildren());
 
-            for (int i = 0; i < Integer.min(selectedMoves.size() - 1, mrXTopNMoves); i++) {
-                Move current = selectedMoves.poll().left();
-                SimulationGameState deep = board.copy(board).advance(current);
-//                deep.flag = true;
-                val = Double.max(val, new MinimaxServiceFinal(deep, depth - 1, alpha, beta, scorer, current, this.mrXTopNMoves, this.detectiveTopNMoves).minimax());
+            for (Move current : pursuedMoves(selectedMoves, mrXTopNMoves, hashMove)) {
+                board.apply(current);
+                double childVal = minimax(depth - 1, alpha, beta);
+                board.undo();
+                if (childVal > val || bestMove[0] == null) {
+                    bestMove[0] = current;
+                }
+                val = Double.max(val, childVal);
 
                 if (val > beta) {
                     break;
@@ -106,17 +193,16 @@ public class MinimaxServiceFinal implements Callable<Pair<Move, Double>> {
             // choose the top 2 best moves for the detective to pursue further.
 
             PriorityQueue<Pair<Move, Double>> selectedMoves = new PriorityQueue<>(Comparator.<Pair<Move, Double>>comparingDouble(d -> d.right()));
-            selectedMoves.addAll(board.getAvailableMoves()
-                    .stream()
-                    .<Pair<Move, Double>>map(m -> new Pair<>(m, scorer.score(board.copy(board).advance(m))))
-                    .toList());
-//            System.out.println(selectedMoves);
-
-            for (int i = 0; i < Integer.min((selectedMoves.size() - 1), detectiveTopNMoves); i++) {
-                Move current = selectedMoves.poll().left();
-                SimulationGameState deep = board.copy(board).advance(current);
-
-                val = Double.min(val, new MinimaxServiceFinal(deep, depth - 1, alpha, beta, scorer, current, this.mrXTopNMoves, this.detectiveTopNMoves).minimax());
+            selectedMoves.addAll(scoreChildren());
+
+            for (Move current : pursuedMoves(selectedMoves, detectiveTopNMoves, hashMove)) {
+                board.apply(current);
+                double childVal = minimax(depth - 1, alpha, beta);
+                board.undo();
+                if (childVal < val || bestMove[0] == null) {
+                    bestMove[0] = current;
+                }
+                val = Double.min(val, childVal);
 
                 if (val < alpha) {
                     break;
@@ -127,4 +213,40 @@ public class MinimaxServiceFinal implements Callable<Pair<Move, Double>> {
         }
     }
 
+    /**
+     * Takes the moves to pursue from the front of a queue of scored moves. If the best move from the transposition
+     * table is one of them, then it is moved to the front, as it is the most likely to cause a cut-off.
+     * @param selectedMoves The scored moves, best first
+     * @param topNMoves How many of the top moves to pursue
+     * @param hashMove The best move from the transposition table; may be null
+     * @return The moves to pursue, in the order to search them
+     */
+    private static List<Move> pursuedMoves(PriorityQueue<Pair<Move, Double>> selectedMoves, int topNMoves, Move hashMove) {
+        int n = Integer.min(selectedMoves.size() - 1, topNMoves);
+        List<Move> pursued = new ArrayList<>(Integer.max(n, 0));
+        for (int i = 0; i < n; i++) {
+            pursued.add(selectedMoves.poll().left());
+        }
+        int hashIndex = (hashMove == null) ? -1 : pursued.indexOf(hashMove);
+        if (hashIndex > 0) {
+            pursued.add(0, pursued.remove(hashIndex));
+        }
+        return pursued;
+    }
+
+    /**
+     * Scores the position after each of the available moves, without copying the board.
+     * @return The available moves paired with the score of the position they lead to
+     */
+    private List<Pair<Move, Double>> scoreChildren() {
+        Set<Move> moves = board.getAvailableMoves();
+        List<Pair<Move, Double>> scored = new ArrayList<>(moves.size());
+        for (Move m : moves) {
+            board.apply(m);
+            scored.add(new Pair<>(m, scorer.score(board)));
+            board.undo();
+        }
+        return scored;
+    }
+
 }
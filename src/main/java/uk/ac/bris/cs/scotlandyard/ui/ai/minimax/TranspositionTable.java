@@ -0,0 +1,119 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.minimax;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class implementing a fixed-size transposition table for minimax, keyed by
+ * {@link uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState#getZobristKey() Zobrist keys}.
+ *
+ * Positions are very often reached through different move orders (the detectives moving in a different order, for
+ * example), so remembering the result of searching a position lets the other orders reuse it. The table is shared by
+ * all the root move tasks. Every slot holds an immutable {@link Entry} that is swapped in atomically, so threads never
+ * lock or see a half-written entry; at worst a store is lost when two threads write to the same slot.
+ */
+public class TranspositionTable {
+
+    /**
+     * How the score of an entry relates to the true minimax value of its position.
+     */
+    public enum Bound {
+        /** The score is the value of the position */
+        EXACT,
+        /** The search failed high, so the value is at least the score */
+        LOWER,
+        /** The search failed low, so the value is at most the score */
+        UPPER
+    }
+
+    /**
+     * Decides whether a new entry should replace the entry already in its slot.
+     */
+    public enum ReplacementPolicy {
+        /** Always keep the newest entry */
+        ALWAYS {
+            @Override
+            boolean replaces(Entry existing, Entry incoming, int generation) {
+                return true;
+            }
+        },
+        /** Keep the deeper of the two entries, unless the existing one is left over from an earlier search */
+        DEPTH_PREFERRED {
+            @Override
+            boolean replaces(Entry existing, Entry incoming, int generation) {
+                return existing.generation() != generation || incoming.depth() >= existing.depth();
+            }
+        };
+
+        abstract boolean replaces(Entry existing, Entry incoming, int generation);
+    }
+
+    /**
+     * The result of searching a position.
+     * @param key The Zobrist key of the position
+     * @param depth The depth the position was searched to
+     * @param bound How the score relates to the value of the position
+     * @param score The score found by the search
+     * @param bestMove The best move found, or null if no child was searched
+     * @param generation The search that stored the entry
+     */
+    public record Entry(long key, int depth, Bound bound, double score, Move bestMove, int generation) {}
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final ReplacementPolicy policy;
+    private volatile int generation;
+
+    /**
+     * Constructor for a transposition table
+     * @param sizeLog2 The table holds 2^sizeLog2 entries
+     * @param policy The replacement policy to use when two positions share a slot
+     */
+    public TranspositionTable(int sizeLog2, ReplacementPolicy policy) {
+        if (sizeLog2 < 1 || sizeLog2 > 30) throw new IllegalArgumentException("Invalid table size: 2^" + sizeLog2);
+        this.slots = new AtomicReferenceArray<>(1 << sizeLog2);
+        this.mask = (1 << sizeLog2) - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * This function marks the start of a new search. Entries from earlier searches can still be used, but
+     * {@link ReplacementPolicy#DEPTH_PREFERRED} will overwrite them first.
+     */
+    public void newSearch() {
+        generation++;
+    }
+
+    /**
+     * This function looks up a position
+     * @param key The Zobrist key of the position
+     * @return The entry for the position, or null if there is none
+     */
+    public Entry probe(long key) {
+        Entry entry = slots.get(index(key));
+        return (entry != null && entry.key() == key) ? entry : null;
+    }
+
+    /**
+     * This function stores the result of searching a position, if the replacement policy allows it
+     * @param key The Zobrist key of the position
+     * @param depth The depth the position was searched to
+     * @param bound How the score relates to the value of the position
+     * @param score The score found by the search
+     * @param bestMove The best move found, or null if no child was searched
+     */
+    public void store(long key, int depth, Bound bound, double score, Move bestMove) {
+        int index = index(key);
+        Entry incoming = new Entry(key, depth, bound, score, bestMove, generation);
+        Entry existing = slots.get(index);
+        if (existing == null || existing.key() == key || policy.replaces(existing, incoming, incoming.generation())) {
+            slots.set(index, incoming);
+        }
+    }
+
+    // The low bits of the key are as random as the high bits, so we can use them directly.
+    private int index(long key) {
+        return (int) key & mask;
+    }
+}
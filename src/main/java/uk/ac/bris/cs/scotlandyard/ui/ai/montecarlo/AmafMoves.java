@@ -0,0 +1,60 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompactGameState;
+
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.destination;
+
+/**
+ * Class holding the set of moves that were played during one rollout, for the "all moves as first" (AMAF)
+ * statistics of RAVE. Moves are told apart only by the piece that made them and where it ended up, so a move by
+ * taxi and the same move by bus, or a double move and a single move to the same node, count as the same move; where
+ * a piece goes matters much more in Scotland Yard than how it gets there.
+ * <p>
+ * The set is cleared by starting a new generation rather than by wiping it, so that a rollout does not allocate.
+ */
+class AmafMoves {
+
+    private final CompactGameState state;
+    private final int nodesPerPiece;
+    private final int[] generations;
+    private int generation = 1;
+
+    /**
+     * Constructor for an empty set of moves
+     * @param state The game state of the tree's root, which the pieces and the graph are taken from
+     */
+    AmafMoves(CompactGameState state) {
+        this.state = state;
+        this.nodesPerPiece = state.getGraph().maxNode() + 1;
+        this.generations = new int[state.numPieces() * nodesPerPiece];
+    }
+
+    /**
+     * This function empties the set
+     */
+    void clear() {
+        generation++;
+    }
+
+    /**
+     * This function adds a move to the set
+     * @param move The move
+     */
+    void add(Move move) {
+        generations[key(move)] = generation;
+    }
+
+    /**
+     * This function checks whether a move, or one by the same piece to the same node, is in the set
+     * @param move The move
+     * @return Whether it is in the set
+     */
+    boolean contains(Move move) {
+        return generations[key(move)] == generation;
+    }
+
+    private int key(Move move) {
+        return state.indexOf(move.commencedBy()) * nodesPerPiece + destination(move);
+    }
+}
@@ -0,0 +1,126 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import static uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.MonteCarlo.argmaxUCB1;
+
+/**
+ * Visitor for expanding a monte carlo tree that is shared between threads. It walks the tree like
+ * {@link ExpandingMCNodeVisitor}, with two differences:
+ * <ul>
+ *     <li>A node's children and unexplored moves are only read or changed while holding the node's lock, so two
+ *     threads never expand the same move or see a half-updated list of children.</li>
+ *     <li>Every node on the path is given a virtual loss, so that threads that are selecting at the same time spread
+ *     out over the tree instead of all following the same path.</li>
+ * </ul>
+ * The game states in the tree are only ever read, and new nodes are created outside of the locks.
+ */
+public class ConcurrentExpandingMCNodeVisitor implements MCNodeVisitor {
+    //store the path taken through the tree
+    public ArrayList<MCNode> nodesInPath = new ArrayList<>();
+    double virtualLoss;
+
+    /**
+     *
+     * @param virtualLoss The number of visits to add to each node on the path until its rollout is back propagated
+     */
+    public ConcurrentExpandingMCNodeVisitor(double virtualLoss) {
+        this.virtualLoss = virtualLoss;
+    }
+
+    private void addToPath(MCNode node) {
+        node.addVirtualLoss(virtualLoss);
+        nodesInPath.add(node);
+    }
+
+    /**
+     * This function implements the visitor's behaviour if we have reached a leaf. We just add the node to the
+     * path because there is no way to expand it.
+     * @param leaf
+     */
+    @Override
+    public void visit(MCLeaf leaf) {
+        addToPath(leaf);
+    }
+
+    /**
+     * This function implements the visitor's behaviour if we have reached a root. If it is fully expanded we go to
+     * the child with the highest UCB1 value, otherwise we expand the next unexplored move.
+     * @param mcRoot
+     */
+    @Override
+    public void visit(MCRoot mcRoot) {
+        addToPath(mcRoot);
+        MCChild next;
+        Move chosenMove;
+        synchronized (mcRoot) {
+            chosenMove = mcRoot.unexploredMoves.poll();
+            next = (chosenMove == null && !mcRoot.children.isEmpty()) ? argmaxUCB1(mcRoot) : null;
+        }
+
+        if (next != null) {
+            next.accept(this);
+            return;
+        }
+        if (chosenMove == null) {
+            // Another thread is still adding the last child of the root, so the path stops here
+            return;
+        }
+
+        SimulationGameState advancedGameState = mcRoot.currGameState.copy(mcRoot.currGameState).advance(chosenMove);
+        MCChild expandedChild;
+        if (!advancedGameState.getWinner().isEmpty()) {
+            // the game is over. The new node should be added as a leaf node
+            expandedChild = new MCLeaf(advancedGameState, mcRoot, chosenMove);
+        } else {
+            expandedChild = new MCFork(mcRoot, chosenMove, new LinkedList<>(), advancedGameState);
+        }
+        // The virtual loss is added before the child is published, so no other thread sees it unvisited
+        addToPath(expandedChild);
+        synchronized (mcRoot) {
+            mcRoot.children.add(expandedChild);
+        }
+    }
+
+    /**
+     * This function implements the visitor's behaviour if we have reached a fork. If it is fully expanded we go to
+     * the child with the highest UCB1 value, otherwise we expand the next unexplored move.
+     * @param fork
+     */
+    @Override
+    public void visit(MCFork fork) {
+        addToPath(fork);
+        MCChild next;
+        Move chosenMove;
+        synchronized (fork) {
+            chosenMove = fork.unexploredMoves.poll();
+            next = (chosenMove == null) ? argmaxUCB1(fork) : null;
+        }
+
+        if (next == fork) {
+            // Another thread is still adding the only child of this fork, so the path stops here
+            return;
+        }
+        if (next != null) {
+            next.accept(this);
+            return;
+        }
+
+        SimulationGameState advancedGameState = fork.currGameState.copy(fork.currGameState).advance(chosenMove);
+        MCChild expandedChild;
+        if (!advancedGameState.getWinner().isEmpty()) {
+            // the game is over
+            expandedChild = new MCLeaf(advancedGameState, fork, chosenMove);
+        } else {
+            expandedChild = new MCFork(fork, chosenMove, new LinkedList<>(), advancedGameState);
+        }
+        addToPath(expandedChild);
+        synchronized (fork) {
+            fork.children.add(expandedChild);
+        }
+    }
+}
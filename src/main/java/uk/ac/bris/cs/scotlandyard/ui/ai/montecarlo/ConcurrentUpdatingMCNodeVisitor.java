@@ -0,0 +1,52 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+/**
+ * Visitor for implementing back propagation in a monte carlo tree that is shared between threads. Like
+ * {@link UpdatingMCNodeVisitor}, but the statistics are updated atomically and the virtual loss that
+ * {@link ConcurrentExpandingMCNodeVisitor} added on the way down is removed.
+ */
+public class ConcurrentUpdatingMCNodeVisitor implements MCNodeVisitor {
+
+    double outcome;
+    double virtualLoss;
+
+    /**
+     *
+     * @param simOutcome The outcome that is to be back propagated
+     * @param virtualLoss The virtual loss that was added to every node on the path
+     */
+    public ConcurrentUpdatingMCNodeVisitor(double simOutcome, double virtualLoss) {
+        this.outcome = simOutcome;
+        this.virtualLoss = virtualLoss;
+    }
+
+    /**
+     * This function implements the visitor's behaviour for a fork. We update it and then go up a level to its parent.
+     * @param fork
+     */
+    @Override
+    public void visit(MCFork fork) {
+        fork.updateConcurrently(outcome, virtualLoss);
+        fork.parent.accept(this);
+    }
+
+    /**
+     * This function implements the visitor's behaviour for a leaf. We update it and then go up a level to its parent.
+     * @param leaf
+     */
+    @Override
+    public void visit(MCLeaf leaf) {
+        leaf.updateConcurrently(outcome, virtualLoss);
+        leaf.parent.accept(this);
+    }
+
+    /**
+     * This function implements the visitor's behaviour for a root. We update it, but it has no parents so
+     * we stop there.
+     * @param mcRoot
+     */
+    @Override
+    public void visit(MCRoot mcRoot) {
+        mcRoot.updateConcurrently(outcome, virtualLoss);
+    }
+}
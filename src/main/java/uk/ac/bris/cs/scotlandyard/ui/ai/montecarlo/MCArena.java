@@ -0,0 +1,337 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.MoveTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.util.Arrays;
+
+/**
+ * Class representing a monte carlo tree whose nodes are stored in an arena: parallel arrays of primitives indexed by
+ * node, rather than one {@link MCNode} object per node. The children of a node are stored next to each other, so
+ * choosing a child and back propagating are loops over arrays instead of walking linked lists of objects.
+ *
+ * Nodes do not hold a game state. The tree has one game state, which {@link #select(double)} plays the moves from
+ * the root onto (with {@link SimulationGameState#apply(Move)}) and {@link #backPropagate(double)} takes them back
+ * again, so a node costs a few dozen bytes however big the game state is. The move leading to each node is kept as
+ * its {@link MoveTable} code, and only turned back into a {@link Move} when it is played or handed out.
+ *
+ * The tree grows the same way as one made of {@link MCRoot}, {@link MCFork} and {@link MCLeaf} nodes: each rollout
+ * explores one new move, and the children of a node are chosen by UCB1 once all of its moves have been explored.
+ *
+ * The arena can also share transpositions, i.e. positions that are reached by several move orders, such as the
+ * detectives moving in a different order within a round. Then a move that leads to a position that is already in the
+ * tree is linked to that position's node, so the tree becomes a directed acyclic graph where the statistics and the
+ * children of each position are kept once. As a node can have several parents, rollouts are back propagated along
+ * the path that they took rather than through the parents of the node.
+ */
+public class MCArena {
+
+    /**
+     * The index of the root node
+     */
+    public static final int ROOT = 0;
+
+    // The value of firstChild for nodes that have none
+    private static final int NONE = -1;
+
+    private final SimulationGameState gameState;
+    private final MoveTable moveTable;
+    private int size;
+
+    private int[] visits;
+    private double[] wins;
+    // The node that holds the statistics and children of each node's position, which is the node itself unless the
+    // position was already in the tree when the node was explored
+    private int[] canonical;
+    private int[] firstChild;
+    private int[] numChildren;
+    private int[] numExplored;
+    private boolean[] terminal;
+    private int[] moves; // move codes, see MoveTable
+
+    // The nodes on the path from the root found by the last select
+    private int[] path = new int[32];
+    private int pathLength;
+
+    // Open addressing table from the Zobrist key of a position to its node plus one (so that 0 is an empty slot), or
+    // null if transpositions are not shared
+    private long[] tableKeys;
+    private int[] tableNodes;
+    private int tableSize;
+
+    /**
+     * Constructor for an arena tree
+     * @param gameState The game state at the root, which the tree plays moves on while it is being searched; it is
+     *                  back at the root position whenever no rollout is in progress
+     * @param initialCapacity The number of nodes to make room for to begin with; the arrays grow when they are full
+     */
+    public MCArena(SimulationGameState gameState, int initialCapacity) {
+        this(gameState, initialCapacity, false);
+    }
+
+    /**
+     * Constructor for an arena tree
+     * @param gameState The game state at the root, which the tree plays moves on while it is being searched; it is
+     *                  back at the root position whenever no rollout is in progress
+     * @param initialCapacity The number of nodes to make room for to begin with; the arrays grow when they are full
+     * @param sharesTranspositions Whether moves leading to the same position share one node
+     */
+    public MCArena(SimulationGameState gameState, int initialCapacity, boolean sharesTranspositions) {
+        this.gameState = gameState;
+        this.moveTable = MoveTable.of(gameState.getCompactState().getGraph());
+        int capacity = Math.max(initialCapacity, 1);
+        this.visits = new int[capacity];
+        this.wins = new double[capacity];
+        this.canonical = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.numChildren = new int[capacity];
+        this.numExplored = new int[capacity];
+        this.terminal = new boolean[capacity];
+        this.moves = new int[capacity];
+
+        this.size = 1;
+        canonical[ROOT] = ROOT;
+        firstChild[ROOT] = NONE;
+        terminal[ROOT] = !gameState.getWinner().isEmpty();
+
+        if (sharesTranspositions) {
+            this.tableKeys = new long[Integer.highestOneBit(capacity) * 2];
+            this.tableNodes = new int[tableKeys.length];
+            putNode(gameState.getZobristKey(), ROOT);
+        }
+    }
+
+    /**
+     * This function goes down the tree from the root, playing each move onto the game state. At each node we explore
+     * its next unexplored move if it has one, and stop there; otherwise we go on to the child with the highest UCB1
+     * value. We also stop at nodes where the game is over.
+     * @param explorationConstant The exploration constant for UCB1
+     * @return The node that we stopped at; {@link #gameState()} is its position until it is back propagated
+     */
+    public int select(double explorationConstant) {
+        pathLength = 0;
+        addToPath(ROOT);
+        int node = ROOT;
+        while (!terminal[node]) {
+            if (firstChild[node] == NONE) {
+                addChildren(node);
+            }
+
+            if (numExplored[node] < numChildren[node]) {
+                int child = firstChild[node] + numExplored[node]++;
+                gameState.apply(moveTable.decode(moves[child]));
+                explore(child);
+                addToPath(child);
+                return child;
+            }
+
+            int chosen = argmaxUCB1(node, explorationConstant);
+            gameState.apply(moveTable.decode(moves[chosen]));
+            addToPath(chosen);
+            node = canonical[chosen];
+        }
+        return path[pathLength - 1];
+    }
+
+    /**
+     * This function adds the outcome of a rollout to the nodes on the path found by {@link #select(double)}, and
+     * takes the moves that it played back off the game state.
+     * @param outcome The outcome of the rollout from the node that was selected
+     */
+    public void backPropagate(double outcome) {
+        for (int i = pathLength - 1; i >= 0; i--) {
+            int n = canonical[path[i]];
+            visits[n]++;
+            wins[n] += outcome;
+            if (i > 0) {
+                gameState.undo();
+            }
+        }
+    }
+
+    /**
+     * @return The move made from the root on the path found by the last {@link #select(double)}, which must have
+     *         gone past the root
+     */
+    public Move firstMoveOnPath() {
+        return moveTable.decode(moves[path[1]]);
+    }
+
+    // Sets up a child whose move has just been played on the game state, linking it to its position's node if the
+    // position is already in the tree
+    private void explore(int child) {
+        if (tableKeys != null) {
+            long key = gameState.getZobristKey();
+            int existing = getNode(key);
+            if (existing != NONE) {
+                canonical[child] = existing;
+                terminal[child] = terminal[existing];
+                return;
+            }
+            putNode(key, child);
+        }
+        terminal[child] = !gameState.getWinner().isEmpty();
+    }
+
+    private void addToPath(int node) {
+        if (pathLength == path.length) {
+            path = Arrays.copyOf(path, path.length * 2);
+        }
+        path[pathLength++] = node;
+    }
+
+    private int getNode(long key) {
+        int mask = tableKeys.length - 1;
+        for (int i = (int) key & mask; tableNodes[i] != 0; i = (i + 1) & mask) {
+            if (tableKeys[i] == key) {
+                return tableNodes[i] - 1;
+            }
+        }
+        return NONE;
+    }
+
+    private void putNode(long key, int node) {
+        if (2 * (tableSize + 1) > tableKeys.length) {
+            long[] oldKeys = tableKeys;
+            int[] oldNodes = tableNodes;
+            tableKeys = new long[oldKeys.length * 2];
+            tableNodes = new int[oldKeys.length * 2];
+            tableSize = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldNodes[i] != 0) {
+                    putNode(oldKeys[i], oldNodes[i] - 1);
+                }
+            }
+        }
+
+        int mask = tableKeys.length - 1;
+        int i = (int) key & mask;
+        while (tableNodes[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        tableKeys[i] = key;
+        tableNodes[i] = node + 1;
+        tableSize++;
+    }
+
+    // The explored child of the node with the highest UCB1 value; the last one if several are equal. The statistics
+    // of a child are those of its position, which other parents may have added to as well.
+    private int argmaxUCB1(int node, double explorationConstant) {
+        double logVisits = Math.log(visits[node]);
+        int out = firstChild[node];
+        double max = Double.NEGATIVE_INFINITY;
+
+        int end = firstChild[node] + numExplored[node];
+        for (int child = firstChild[node]; child < end; child++) {
+            int c = canonical[child];
+            double score = wins[c] / visits[c] + explorationConstant * Math.sqrt(logVisits / visits[c]);
+            if (score >= max) {
+                out = child;
+                max = score;
+            }
+        }
+        return out;
+    }
+
+    // Allocates a child for every available move of the node, next to each other at the end of the arena
+    private void addChildren(int node) {
+        int count = gameState.getAvailableMoves().size();
+        ensureCapacity(size + count);
+
+        firstChild[node] = size;
+        numChildren[node] = count;
+        for (Move move : gameState.getAvailableMoves()) {
+            canonical[size] = size;
+            firstChild[size] = NONE;
+            moves[size] = moveTable.encode(move);
+            size++;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= visits.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, visits.length * 2);
+        visits = Arrays.copyOf(visits, newCapacity);
+        wins = Arrays.copyOf(wins, newCapacity);
+        canonical = Arrays.copyOf(canonical, newCapacity);
+        firstChild = Arrays.copyOf(firstChild, newCapacity);
+        numChildren = Arrays.copyOf(numChildren, newCapacity);
+        numExplored = Arrays.copyOf(numExplored, newCapacity);
+        terminal = Arrays.copyOf(terminal, newCapacity);
+        moves = Arrays.copyOf(moves, newCapacity);
+    }
+
+    /**
+     * @return The game state that the tree plays its moves on
+     */
+    public SimulationGameState gameState() {
+        return gameState;
+    }
+
+    /**
+     * @return The number of nodes in the tree, including the children that have not been explored yet
+     */
+    public int numNodes() {
+        return size;
+    }
+
+    /**
+     * @param node A node
+     * @return Whether the node's position was already in the tree when it was explored, so that it shares another
+     *         node's statistics and children
+     */
+    public boolean isTransposition(int node) {
+        return canonical[node] != node;
+    }
+
+    /**
+     * @param node A node
+     * @return Whether the game is over at the node
+     */
+    public boolean isTerminal(int node) {
+        return terminal[node];
+    }
+
+    /**
+     * @param node A node
+     * @return The index of the first child of the node, or -1 if the node has no children yet
+     */
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * @param node A node
+     * @return The number of children of the node that have been explored, which come first among its children
+     */
+    public int numExplored(int node) {
+        return numExplored[node];
+    }
+
+    /**
+     * @param node A node
+     * @return The number of rollouts that went through the node's position
+     */
+    public int visits(int node) {
+        return visits[canonical[node]];
+    }
+
+    /**
+     * @param node A node
+     * @return The sum of the outcomes of the rollouts that went through the node's position
+     */
+    public double wins(int node) {
+        return wins[canonical[node]];
+    }
+
+    /**
+     * @param node A node other than the root
+     * @return The move leading to the node from its parent
+     */
+    public Move move(int node) {
+        return moveTable.decode(moves[node]);
+    }
+}
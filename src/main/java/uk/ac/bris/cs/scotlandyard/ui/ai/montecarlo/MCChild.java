@@ -8,9 +8,39 @@ import uk.ac.bris.cs.scotlandyard.model.Move;
 public abstract class MCChild extends MCNode {
     public MCNode parent;
     public Move parentAction;
+    // The "all moves as first" statistics: the rollouts through the parent in which parentAction was played later on
+    public double amafWins;
+    public double amafVisits;
     public abstract void accept(MCNodeVisitor visitor);
 
     public double UCB1(double explorationConstant) {
         return (this.numWins / this.numVisits) +  explorationConstant * Math.sqrt(Math.log(this.parent.numVisits)/this.numVisits);
     }
-}
\ No newline at end of file
+
+    /**
+     * This function does the same as {@link #UCB1(double)}, but blends the node's win rate with its AMAF win rate
+     * (RAVE). The AMAF statistics come from many more rollouts, so they are trusted at first, and less and less as
+     * the node's own visits grow.
+     * @param explorationConstant The exploration constant
+     * @param raveEquivalence The number of visits at which the two win rates are weighted equally
+     * @return The UCB1 value
+     */
+    public double UCB1(double explorationConstant, double raveEquivalence) {
+        return raveValue(raveEquivalence) + explorationConstant * Math.sqrt(Math.log(this.parent.numVisits)/this.numVisits);
+    }
+
+    /**
+     * This function finds the node's win rate blended with its AMAF win rate, weighting the AMAF win rate by
+     * sqrt(k / (3n + k)) for k the RAVE equivalence and n the node's visits
+     * @param raveEquivalence The number of visits at which the two win rates are weighted equally
+     * @return The blended win rate
+     */
+    public double raveValue(double raveEquivalence) {
+        double winRate = this.numWins / this.numVisits;
+        if (this.amafVisits == 0) {
+            return winRate;
+        }
+        double beta = Math.sqrt(raveEquivalence / (3 * this.numVisits + raveEquivalence));
+        return (1 - beta) * winRate + beta * (this.amafWins / this.amafVisits);
+    }
+}
@@ -3,13 +3,33 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
 import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.MCNodeVisitor;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * Class representing an abstract node in the Monte Carlo tree
  */
 public abstract class MCNode {
     public SimulationGameState currGameState;
+    // Plain fields, as most trees are searched by one thread; a tree shared between threads only changes them through
+    // the concurrent methods below
     public double numWins;
     public double numVisits;
+    // Whether the outcome from this node is known, in which case it is no longer searched; see MonteCarlo.rollout
+    public MCProof proof = MCProof.UNPROVEN;
+
+    private static final VarHandle NUM_WINS;
+    private static final VarHandle NUM_VISITS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NUM_WINS = lookup.findVarHandle(MCNode.class, "numWins", double.class);
+            NUM_VISITS = lookup.findVarHandle(MCNode.class, "numVisits", double.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     abstract public void accept(MCNodeVisitor visitor);
 
@@ -17,4 +37,27 @@ public abstract class MCNode {
         numVisits += 1;
         numWins += outcome;
     }
-}
\ No newline at end of file
+
+    /**
+     * This function adds visits for a rollout that has not finished yet (a virtual loss). Other threads choosing a
+     * child see the node as visited without winning, so they are steered towards other paths until the rollout
+     * finishes and {@link #updateConcurrently(double, double)} takes the virtual loss away again.
+     * @param virtualLoss The number of visits to add
+     */
+    public void addVirtualLoss(double virtualLoss) {
+        NUM_VISITS.getAndAdd(this, virtualLoss);
+        // Publish the change to the threads that read the statistics without the VarHandle
+        VarHandle.fullFence();
+    }
+
+    /**
+     * This function atomically records the outcome of a rollout and removes the virtual loss added on the way down.
+     * @param outcome The outcome of the rollout
+     * @param virtualLoss The virtual loss that was added to the node for the rollout
+     */
+    public void updateConcurrently(double outcome, double virtualLoss) {
+        NUM_VISITS.getAndAdd(this, 1 - virtualLoss);
+        NUM_WINS.getAndAdd(this, outcome);
+        VarHandle.fullFence();
+    }
+}
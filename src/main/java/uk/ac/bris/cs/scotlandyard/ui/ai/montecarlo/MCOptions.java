@@ -0,0 +1,103 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.leafevaluators.LeafEvaluator;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.PlayoutPolicy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.UniformPlayout;
+
+/**
+ * Record of the ways that a monte carlo search can be changed from the plain algorithm, shared by
+ * {@link MonteCarlo}, {@link MCStrategy} and {@link uk.ac.bris.cs.scotlandyard.ui.ai.factories.MonteCarloFactory}.
+ * Use {@link #builder()} to set some of them and leave the rest as in {@link #DEFAULT}.
+ * @param parallelism Whether the threads of an {@link MCStrategy} build their own trees or share one, which also
+ *                    decides whether the search proves nodes and stops early, see {@link MCParallelism}
+ * @param storage Whether the nodes of the trees hold their game states or replay the moves from the root
+ * @param playoutPolicy The policy that chooses the moves of the rollouts, which is shared by the threads
+ * @param leafEvaluator The evaluator for the rollouts that are cut short, which is shared by the threads, or null to
+ *                      play every rollout to the end of the game
+ * @param raveEquivalence The number of visits at which a node's win rate and its AMAF win rate are weighted equally
+ *                        when choosing children, or 0 to not use RAVE, see {@link MCChild#raveValue(double)}
+ * @param wideningExponent How fast nodes are allowed more children as their visits grow, usually ≈ 0.5, or 0 to
+ *                         explore every move of a node before choosing between them
+ */
+public record MCOptions(MCParallelism parallelism, MCTreeStorage storage, PlayoutPolicy playoutPolicy,
+                        LeafEvaluator leafEvaluator, double raveEquivalence, double wideningExponent) {
+
+    /**
+     * Options for root parallel search over trees that hold their game states, with uniformly random playouts to the
+     * end of the game and none of RAVE or progressive widening
+     */
+    public static final MCOptions DEFAULT = builder().build();
+
+    public MCOptions {
+        if (parallelism == null || storage == null || playoutPolicy == null) {
+            throw new IllegalArgumentException("Only the leaf evaluator may be left out");
+        }
+        if (raveEquivalence < 0) throw new IllegalArgumentException("Invalid RAVE equivalence: " + raveEquivalence);
+        if (wideningExponent < 0 || wideningExponent >= 1) throw new IllegalArgumentException("Invalid widening exponent: " + wideningExponent);
+        if (storage != MCTreeStorage.STATE_PER_NODE && parallelism != MCParallelism.ROOT) {
+            throw new IllegalArgumentException("Replayed trees cannot be shared between threads");
+        }
+        if ((raveEquivalence != 0 || wideningExponent != 0) && (storage != MCTreeStorage.STATE_PER_NODE || parallelism != MCParallelism.ROOT)) {
+            throw new IllegalArgumentException("RAVE and progressive widening are only used by trees that are built on one thread and hold their game states");
+        }
+    }
+
+    /**
+     * @return A builder that starts from the default options
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Class for building {@link MCOptions} one option at a time. The options are checked when they are built.
+     */
+    public static class Builder {
+        private MCParallelism parallelism = MCParallelism.ROOT;
+        private MCTreeStorage storage = MCTreeStorage.STATE_PER_NODE;
+        private PlayoutPolicy playoutPolicy = new UniformPlayout();
+        private LeafEvaluator leafEvaluator = null;
+        private double raveEquivalence = 0;
+        private double wideningExponent = 0;
+
+        private Builder() {}
+
+        public Builder parallelism(MCParallelism parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder storage(MCTreeStorage storage) {
+            this.storage = storage;
+            return this;
+        }
+
+        public Builder playoutPolicy(PlayoutPolicy playoutPolicy) {
+            this.playoutPolicy = playoutPolicy;
+            return this;
+        }
+
+        public Builder leafEvaluator(LeafEvaluator leafEvaluator) {
+            this.leafEvaluator = leafEvaluator;
+            return this;
+        }
+
+        public Builder raveEquivalence(double raveEquivalence) {
+            this.raveEquivalence = raveEquivalence;
+            return this;
+        }
+
+        public Builder wideningExponent(double wideningExponent) {
+            this.wideningExponent = wideningExponent;
+            return this;
+        }
+
+        /**
+         * @return The options
+         * @throws IllegalArgumentException If an option is out of range, or the options cannot be used together
+         */
+        public MCOptions build() {
+            return new MCOptions(parallelism, storage, playoutPolicy, leafEvaluator, raveEquivalence, wideningExponent);
+        }
+    }
+}
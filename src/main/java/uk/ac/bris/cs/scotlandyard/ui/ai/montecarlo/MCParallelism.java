@@ -0,0 +1,25 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+/**
+ * How {@link MCStrategy} spreads its search over several threads. Only {@link #ROOT} parallelism over trees that hold
+ * their game states ({@link MCTreeStorage#STATE_PER_NODE}) proves nodes ({@link MCProof}) and stops searching once the
+ * best move is decided; the other modes always use their whole budget.
+ */
+public enum MCParallelism {
+    /**
+     * Every thread builds its own tree, and the statistics of the trees' root children are summed at the end. The
+     * threads never share anything, but each tree is only as deep as one thread can make it.
+     */
+    ROOT,
+    /**
+     * All the threads search one shared tree, using virtual loss to spread out over it, so that the whole search
+     * goes into a single deeper tree.
+     */
+    TREE,
+    /**
+     * One thread searches the tree, choosing a batch of paths with virtual loss, and the playouts from the ends of the
+     * paths are run on the other threads. Nothing but the playouts runs in parallel, so there is no contention over
+     * the tree, but the paths in a batch are chosen without knowing each other's outcomes.
+     */
+    LEAF
+}
@@ -0,0 +1,21 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+/**
+ * Whether the outcome of the game from a node of a monte carlo tree is known for certain (MCTS-Solver). Like the
+ * statistics of the nodes, proofs are from the perspective of the player who is moving at the root of the tree.
+ */
+public enum MCProof {
+    /**
+     * The outcome is not known, so the node is searched as usual.
+     */
+    UNPROVEN,
+    /**
+     * The player moving at the root wins whatever the other side does: the game has been won, or the root player
+     * can move to a proven win, or every move that the other side has leads to one.
+     */
+    WIN,
+    /**
+     * The player moving at the root loses whatever they do, the other way round from {@link #WIN}.
+     */
+    LOSS
+}
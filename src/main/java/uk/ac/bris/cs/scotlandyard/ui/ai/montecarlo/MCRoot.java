@@ -22,6 +22,24 @@ public class MCRoot extends MCNode {
         this.children = children;
     }
 
+    /**
+     * This creates a root from a node deeper in an earlier tree, so that a new search can carry on from the
+     * statistics that the earlier one gathered for the position. The node's children are moved to the new root.
+     * @param fork The node to promote
+     * @param currGameState The game state of the new root, which must be the same position as the node's
+     */
+    public MCRoot(MCFork fork, SimulationGameState currGameState) {
+        this.unexploredMoves = new LinkedList<>(fork.unexploredMoves);
+        this.currGameState = currGameState;
+        this.numWins = fork.numWins;
+        this.numVisits = fork.numVisits;
+        this.proof = fork.proof;
+        this.children = fork.children;
+        for (MCChild child : children) {
+            child.parent = this;
+        }
+    }
+
     @Override
     public void accept(MCNodeVisitor visitor) {
         visitor.visit(this);
@@ -0,0 +1,37 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+import java.util.List;
+
+/**
+ * Record of how much work a monte carlo search did, and how much it saved by stopping before its budget ran out
+ * because the root was proven or its best move could no longer change.
+ * @param rollouts The number of rollouts done
+ * @param rolloutsSaved The number of rollouts that the budget had left, estimated from the rate so far if the budget
+ *                      is a deadline
+ * @param nanosSaved The time that the budget had left, estimated from the rate so far if the budget is a number of
+ *                   rollouts. Summed over the threads of a search, so it is CPU time rather than wall clock time
+ */
+public record MCSearchStats(int rollouts, long rolloutsSaved, long nanosSaved) {
+
+    /**
+     * Stats for a search that has not done anything
+     */
+    public static final MCSearchStats NONE = new MCSearchStats(0, 0, 0);
+
+    /**
+     * This function adds up the stats of searches that ran side by side, such as the trees of a root parallel search
+     * @param stats The stats of each search
+     * @return The total stats
+     */
+    public static MCSearchStats sum(List<MCSearchStats> stats) {
+        int rollouts = 0;
+        long rolloutsSaved = 0;
+        long nanosSaved = 0;
+        for (MCSearchStats s : stats) {
+            rollouts += s.rollouts;
+            rolloutsSaved += s.rolloutsSaved;
+            nanosSaved += s.nanosSaved;
+        }
+        return new MCSearchStats(rollouts, rolloutsSaved, nanosSaved);
+    }
+}
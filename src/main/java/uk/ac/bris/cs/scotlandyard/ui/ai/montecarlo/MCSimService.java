@@ -3,15 +3,17 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
-import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.UniformPlayout;
 import uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies.FastScorer;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
-import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Class for a thread that performs a monte carlo simulation.
@@ -31,7 +33,7 @@ public class MCSimService implements Callable<Integer> {
         this.initMrXTurn = initMrXTurn;
 //        System.out.println("IS MRX TURN: " + initMrXTurn);
         this.lookAhead = lookAhead;
-        this.scorer = new FastScorer(new GreedyAStar());
+        this.scorer = new FastScorer(new PrecomputedDistance(DistanceTable.Variant.GREEDY_A_STAR));
     }
 
     /**
@@ -41,11 +43,19 @@ public class MCSimService implements Callable<Integer> {
      * @return A random move
      */
     public static Optional<Move> chooseRandomMove(Set<Move> avlMoves) {
-        var moves = List.copyOf(avlMoves);
-        if (moves.isEmpty()) {
-            return Optional.empty();
-        }
-        return Optional.of(moves.get(new Random().nextInt(moves.size())));
+        return chooseRandomMove(avlMoves, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Selects a random move using a particular random number generator, so that parallel searches can each use
+     * their own stream of random numbers
+     *
+     * @param avlMoves The available moves at a particular position
+     * @param random The random number generator to use
+     * @return A random move
+     */
+    public static Optional<Move> chooseRandomMove(Set<Move> avlMoves, RandomGenerator random) {
+        return Optional.ofNullable(UniformPlayout.randomMove(avlMoves, random));
     }
 
 //    /**
@@ -116,12 +126,12 @@ public class MCSimService implements Callable<Integer> {
                 break;
             }
             // We select a random move and advance it, and increment the move counter.
-            Optional<Move> randomMove = chooseRandomMove(runGameState.getAvailableMoves());
-            if (randomMove.isEmpty()) {
+            Move randomMove = runGameState.getRandomMove(ThreadLocalRandom.current());
+            if (randomMove == null) {
                 break;
             }
 
-            runGameState = runGameState.copy(runGameState).advance(randomMove.get());
+            runGameState = runGameState.copy(runGameState).advance(randomMove);
             moveCount++;
         }
 
@@ -2,11 +2,15 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
 
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.MoveSelectingStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.*;
 
 /**
@@ -19,16 +23,42 @@ public class MCStrategy implements MoveSelectingStrategy {
     private final int numSims;
     private final int treeIters;
     private final int lookAhead;
+    private final MCOptions options;
+
+    // The number of visits that a rollout in progress adds to each node on its path in a shared tree
+    private static final double VIRTUAL_LOSS = 1;
+
+    // The trees built on our last turn as Mr X and as a detective, which the next turn carries on from if it can
+    private List<MCRoot> previousMrXRoots = List.of();
+    private List<MCRoot> previousDetectiveRoots = List.of();
+
+    // What the search for our last move did, and saved by stopping early
+    private MCSearchStats lastSearchStats = MCSearchStats.NONE;
 
     /**
      *
      * @param initExplorationCost The 'exploration cost' for Monte Carlo
-     * @param numParallelInstances The number of parallel instances to run, whose results' maximum is then used
+     * @param numParallelInstances The number of independent trees to build in parallel, whose statistics are summed
      * @param numSims The number of simulations to average
-     * @param treeIters The number of times to rollout
+     * @param treeIters The number of times to rollout for each move, split evenly between the trees
      * @param lookAhead The number of lookaheads
      */
     public MCStrategy(double initExplorationCost, int numParallelInstances, int numSims, int treeIters, int lookAhead) {
+        this(initExplorationCost, numParallelInstances, numSims, treeIters, lookAhead, MCOptions.DEFAULT);
+    }
+
+    /**
+     *
+     * @param initExplorationCost The 'exploration cost' for Monte Carlo
+     * @param numParallelInstances The number of threads to search with
+     * @param numSims The number of simulations to average
+     * @param treeIters The number of times to rollout for each move, split evenly between the threads whatever the
+     *                  parallelism, so that every mode does the same amount of work
+     * @param lookAhead The number of moves after which the rollouts are cut short, if there is a leaf evaluator
+     * @param options How the threads share the search, how the trees are stored, and how the trees are searched
+     */
+    public MCStrategy(double initExplorationCost, int numParallelInstances, int numSims, int treeIters, int lookAhead, MCOptions options) {
+        this.options = options;
         this.initExplorationCost = initExplorationCost;
         this.numParallelInstances = numParallelInstances;
         this.numSims = numSims;
@@ -79,7 +109,91 @@ public class MCStrategy implements MoveSelectingStrategy {
 //    }
 
     public Move chooseMove (Board board, double initExplorationCost) {
+        return chooseMove(board, initExplorationCost, Deadline.NONE);
+    }
+
+    /**
+     * This function builds a monte carlo tree from the board and returns the move leading to its best child. If the
+     * position was reached in one of the trees built on our previous turn, we carry on from that part of the tree
+     * rather than starting again, see {@link MonteCarlo#findReusableRoot(MCRoot, SimulationGameState, int)}.
+     * @param board The initial board state
+     * @param initExplorationCost The 'exploration cost' parameter
+     * @param deadline The time by which to stop building the tree, or {@link Deadline#NONE} to do treeIters rollouts
+     * @return The best move
+     */
+    public Move chooseMove (Board board, double initExplorationCost, Deadline deadline) {
         SimulationGameState initGameState = new SimulationGameState(board);
+        if (options.storage() != MCTreeStorage.STATE_PER_NODE) {
+            return chooseReplayedMove(board, initGameState, initExplorationCost, deadline);
+        }
+
+        boolean isMrXTurn = SimulationUtilityFunctions.isMrXTurn(initGameState.getAvailableMoves());
+        List<MCRoot> previousRoots = isMrXTurn ? previousMrXRoots : previousDetectiveRoots;
+        // Every piece moves at most once between our turns
+        int movesSincePreviousTurn = board.getPlayers().size();
+
+        // With ROOT parallelism we build numParallelInstances independent trees on separate threads, each with its
+        // own copy of the game state and its share of treeIters, and sum their statistics at the end. With TREE parallelism the threads all
+        // roll out on one shared tree, and with LEAF parallelism they only run the playouts of a tree built on this
+        // thread. Either way every playout has its own stream of random numbers.
+        ExecutorService threadPool = Executors.newFixedThreadPool(numParallelInstances);
+        SplittableRandom seeds = new SplittableRandom();
+        List<Callable<MCRoot>> tasks = new ArrayList<>(numParallelInstances);
+        List<MonteCarlo> searches = new ArrayList<>(numParallelInstances);
+        Callable<MCRoot> leafSearch = null;
+        if (options.parallelism() == MCParallelism.ROOT) {
+            for (int i = 0; i < numParallelInstances; i++) {
+                MCRoot root = reusableRoot(previousRoots, i, initGameState.copy(initGameState), movesSincePreviousTurn);
+                MonteCarlo monteCarlo = new MonteCarlo(initExplorationCost, numSims, root.currGameState,
+                        treeIters / numParallelInstances, lookAhead, deadline, seeds.split(), options);
+                searches.add(monteCarlo);
+                tasks.add(() -> monteCarlo.buildTree(root));
+            }
+        } else if (options.parallelism() == MCParallelism.LEAF) {
+            // This thread builds the tree, and the pool only runs the playouts, one per thread in each batch
+            MCRoot root = reusableRoot(previousRoots, 0, initGameState.copy(initGameState), movesSincePreviousTurn);
+            MonteCarlo monteCarlo = new MonteCarlo(initExplorationCost, numSims, root.currGameState,
+                    treeIters, lookAhead, deadline, seeds.split(), options);
+            searches.add(monteCarlo);
+            leafSearch = () -> monteCarlo.buildTreeInBatches(root, numParallelInstances, VIRTUAL_LOSS, threadPool);
+        } else {
+            MCRoot sharedRoot = reusableRoot(previousRoots, 0, initGameState.copy(initGameState), movesSincePreviousTurn);
+            for (int i = 0; i < numParallelInstances; i++) {
+                MonteCarlo monteCarlo = new MonteCarlo(initExplorationCost, numSims, sharedRoot.currGameState,
+                        treeIters / numParallelInstances, lookAhead, deadline, seeds.split(), options);
+                searches.add(monteCarlo);
+                tasks.add(() -> {
+                    monteCarlo.expandSharedTree(sharedRoot, VIRTUAL_LOSS);
+                    return sharedRoot;
+                });
+            }
+        }
+
+        List<MCRoot> roots = new ArrayList<>(numParallelInstances);
+        try {
+            if (leafSearch != null) {
+                roots.add(leafSearch.call());
+            }
+            for (Future<MCRoot> result : threadPool.invokeAll(tasks)) {
+                MCRoot root = result.get();
+                if (!roots.contains(root)) {
+                    roots.add(root);
+                }
+            }
+        } catch (InterruptedException e) {
+            return board.getAvailableMoves().stream().findFirst().orElseThrow();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            threadPool.shutdownNow();
+        }
+
+        if (isMrXTurn) {
+            previousMrXRoots = roots;
+        } else {
+            previousDetectiveRoots = roots;
+        }
+        recordSearchStats(searches);
 
 //        Move outMove = initGameState.getAvailableMoves().stream().toList().get(0);
 //        double maxScore = Double.NEGATIVE_INFINITY;
@@ -94,8 +208,8 @@ public class MCStrategy implements MoveSelectingStrategy {
 //            }
 //        }
 
-        // Iterate over the root, and extract the move from the best child.
-        MCChild scoreNode = new MonteCarlo(initExplorationCost, numSims, initGameState, treeIters, lookAhead).chooseChild();
+        // Iterate over the merged root, and extract the move from the best child.
+        MCChild scoreNode = MonteCarlo.argMaxProb(MonteCarlo.mergeRoots(roots), initGameState);
 
         if (!scoreNode.currGameState.getWinner().isEmpty())
 
@@ -105,6 +219,61 @@ public class MCStrategy implements MoveSelectingStrategy {
         }
     }
 
+    // Does the same as chooseMove, building the trees in arenas; see MCTreeStorage.REPLAY
+    private Move chooseReplayedMove(Board board, SimulationGameState initGameState, double initExplorationCost, Deadline deadline) {
+        boolean sharesTranspositions = options.storage() == MCTreeStorage.REPLAY_TRANSPOSITIONS;
+        ExecutorService threadPool = Executors.newFixedThreadPool(numParallelInstances);
+        SplittableRandom seeds = new SplittableRandom();
+        List<Callable<MCArena>> tasks = new ArrayList<>(numParallelInstances);
+        List<MonteCarlo> searches = new ArrayList<>(numParallelInstances);
+        for (int i = 0; i < numParallelInstances; i++) {
+            MonteCarlo monteCarlo = new MonteCarlo(initExplorationCost, numSims, initGameState.copy(initGameState),
+                    treeIters / numParallelInstances, lookAhead, deadline, seeds.split(), options);
+            searches.add(monteCarlo);
+            tasks.add(() -> monteCarlo.buildArenaTree(sharesTranspositions));
+        }
+
+        List<MCArena> arenas = new ArrayList<>(numParallelInstances);
+        try {
+            for (Future<MCArena> result : threadPool.invokeAll(tasks)) {
+                arenas.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            return board.getAvailableMoves().stream().findFirst().orElseThrow();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            threadPool.shutdownNow();
+        }
+
+        recordSearchStats(searches);
+        return MonteCarlo.argMaxProb(arenas, initGameState);
+    }
+
+    // Sums up the stats of the searches for this move, telling us if they stopped before their budget ran out
+    private void recordSearchStats(List<MonteCarlo> searches) {
+        lastSearchStats = MCSearchStats.sum(searches.stream().map(monteCarlo -> monteCarlo.searchStats).toList());
+    }
+
+    /**
+     * @return What the search for the last move that this strategy chose did, and how much it saved by stopping
+     * before its budget ran out
+     */
+    public MCSearchStats getLastSearchStats() {
+        return lastSearchStats;
+    }
+
+    // The root for the index'th tree: the matching part of the index'th tree from our previous turn, or a new root
+    private static MCRoot reusableRoot(List<MCRoot> previousRoots, int index, SimulationGameState gameState, int maxDepth) {
+        if (index < previousRoots.size()) {
+            MCRoot reused = MonteCarlo.findReusableRoot(previousRoots.get(index), gameState, maxDepth);
+            if (reused != null) {
+                return reused;
+            }
+        }
+        return new MCRoot(gameState, new LinkedList<>());
+    }
+
     /**
      * Wrapper function that calls {@link #(Board, double)}
      * @param board The initial board state
@@ -124,4 +293,14 @@ public class MCStrategy implements MoveSelectingStrategy {
     public Move selectForDetective(Board board) {
         return chooseMove(board, 0.1);
     }
+
+    @Override
+    public Move selectForMrX(Board board, Deadline deadline) {
+        return chooseMove(board, 2.5, deadline);
+    }
+
+    @Override
+    public Move selectForDetective(Board board, Deadline deadline) {
+        return chooseMove(board, 0.1, deadline);
+    }
 }
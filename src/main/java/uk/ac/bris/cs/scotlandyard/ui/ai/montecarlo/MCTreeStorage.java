@@ -0,0 +1,23 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
+
+/**
+ * How {@link MCStrategy} stores its monte carlo trees.
+ */
+public enum MCTreeStorage {
+    /**
+     * Every node is an {@link MCNode} object holding its own copy of the game state, so a rollout can start from a
+     * node without replaying anything. Trees can be carried on with on the next turn.
+     */
+    STATE_PER_NODE,
+    /**
+     * The nodes are stored in an {@link MCArena} and only hold the move leading to them; the game state is rebuilt on
+     * the way down by playing the moves from the root. Trees use far less memory, but can only be built with
+     * {@link MCParallelism#ROOT} parallelism and are not carried on with on the next turn.
+     */
+    REPLAY,
+    /**
+     * As {@link #REPLAY}, but moves that lead to a position that is already in the tree share its node, so rollouts
+     * through different move orders (of the detectives, say) all add to the same statistics.
+     */
+    REPLAY_TRANSPOSITIONS
+}
@@ -1,18 +1,40 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo;
 
+import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
-import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceStrategy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.leafevaluators.LeafEvaluator;
 import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.naivemontecarlo.NaiveSimulatorDetective;
 import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.naivemontecarlo.NaiveSimulatorMrX;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.PlayoutPolicy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies.FastScorer;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.DoublePredicate;
+import java.util.random.RandomGenerator;
 
 import static uk.ac.bris.cs.scotlandyard.ui.ai.minimax.archive.MinimaxStrategy.isMrXTurn;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.destination;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.distanceToClosestDetective;
 
 // Inspired by: https://ai-boson.github.io/mcts
 
@@ -28,6 +50,25 @@ public class MonteCarlo implements Callable<MCChild> {
     public boolean isMrXTurnInitially;
     public int lookAhead;
     public static ScoringStrategy scorer;
+    public Deadline deadline;
+    public RandomGenerator random;
+    public PlayoutPolicy playoutPolicy;
+    public LeafEvaluator leafEvaluator;
+    public double raveEquivalence;
+    public MCSearchStats searchStats = MCSearchStats.NONE;
+    public double wideningExponent;
+
+    // How many rollouts buildTree does between checks of whether its best move can still change
+    private static final int DECISION_CHECK_INTERVAL = 100;
+
+    // With progressive widening, a node with n visits may have up to WIDENING_CONSTANT * n^wideningExponent children
+    private static final double WIDENING_CONSTANT = 2;
+
+    // How far moves take Mr X from the detectives, or the detectives towards him, for ordering the moves to widen by
+    private final DistanceStrategy priorDistances = new PrecomputedDistance(DistanceTable.Variant.DIJKSTRA);
+
+    // Enough nodes for the first few hundred rollouts, after which the arena grows by doubling
+    private static final int ARENA_INITIAL_CAPACITY = 1 << 14;
 
     /**
      *
@@ -37,13 +78,64 @@ public class MonteCarlo implements Callable<MCChild> {
      * @param treeIters The number of times to do a rollout and expand the tree, usually ≈ 1000
      */
     public  MonteCarlo(double explorationConst, int numSims, SimulationGameState initGameState, int treeIters, int lookAhead) {
+        this(explorationConst, numSims, initGameState, treeIters, lookAhead, Deadline.NONE);
+    }
+
+    /**
+     *
+     * @param explorationConst The 'exploration constant', usually ≈ 0.2
+     * @param numSims The number of sims to perform and then average, usually ≈7-10
+     * @param initGameState The initial game state that the monte carlo starts at
+     * @param treeIters The number of times to do a rollout and expand the tree if there is no deadline
+     * @param deadline The time by which to stop expanding the tree; if it is {@link Deadline#NONE} then we do
+     *                 treeIters rollouts instead
+     */
+    public  MonteCarlo(double explorationConst, int numSims, SimulationGameState initGameState, int treeIters, int lookAhead, Deadline deadline) {
+        this(explorationConst, numSims, initGameState, treeIters, lookAhead, deadline, new SplittableRandom());
+    }
+
+    /**
+     *
+     * @param explorationConst The 'exploration constant', usually ≈ 0.2
+     * @param numSims The number of sims to perform and then average, usually ≈7-10
+     * @param initGameState The initial game state that the monte carlo starts at
+     * @param treeIters The number of times to do a rollout and expand the tree if there is no deadline
+     * @param deadline The time by which to stop expanding the tree; if it is {@link Deadline#NONE} then we do
+     *                 treeIters rollouts instead
+     * @param random The random number generator used by the rollouts; trees built in parallel each have their own
+     */
+    public  MonteCarlo(double explorationConst, int numSims, SimulationGameState initGameState, int treeIters, int lookAhead, Deadline deadline, RandomGenerator random) {
+        this(explorationConst, numSims, initGameState, treeIters, lookAhead, deadline, random, MCOptions.DEFAULT);
+    }
+
+    /**
+     *
+     * @param explorationConst The 'exploration constant', usually ≈ 0.2
+     * @param numSims The number of sims to perform and then average, usually ≈7-10
+     * @param initGameState The initial game state that the monte carlo starts at
+     * @param treeIters The number of times to do a rollout and expand the tree if there is no deadline
+     * @param lookAhead The number of moves after which a playout is cut short, if there is a leaf evaluator
+     * @param deadline The time by which to stop expanding the tree; if it is {@link Deadline#NONE} then we do
+     *                 treeIters rollouts instead
+     * @param random The random number generator used by the rollouts; trees built in parallel each have their own
+     * @param options The playout policy, leaf evaluator, RAVE and progressive widening to search with; the
+     *                parallelism and storage are up to the caller
+     */
+    public  MonteCarlo(double explorationConst, int numSims, SimulationGameState initGameState, int treeIters, int lookAhead, Deadline deadline, RandomGenerator random, MCOptions options) {
+        if (options.leafEvaluator() != null && lookAhead < 0) throw new IllegalArgumentException("Invalid look ahead: " + lookAhead);
+        this.wideningExponent = options.wideningExponent();
+        this.raveEquivalence = options.raveEquivalence();
+        this.leafEvaluator = options.leafEvaluator();
+        this.playoutPolicy = options.playoutPolicy();
+        this.deadline = deadline;
+        this.random = random;
         this.explorationConst = explorationConst;
         this.numSims = numSims;
         this.initGameState = initGameState;
         this.treeIters = treeIters;
         isMrXTurnInitially = SimulationUtilityFunctions.isMrXTurn(initGameState.getAvailableMoves());
         this.lookAhead = lookAhead;
-        this.scorer = new FastScorer(new GreedyAStar());
+        this.scorer = new FastScorer(new PrecomputedDistance(DistanceTable.Variant.GREEDY_A_STAR));
     }
 
     /**
@@ -55,15 +147,22 @@ public class MonteCarlo implements Callable<MCChild> {
         MCChild out = root.children.get(0);
         double max = Double.NEGATIVE_INFINITY;
 
+        // A move that is proven to win is the best whatever its statistics, and one proven to lose is only played if
+        // every move is
+        for (MCChild child : root.children) {
+            if (child.proof == MCProof.WIN) {
+                return child;
+            }
+        }
+        boolean hasUnlostChild = root.children.stream().anyMatch(child -> child.proof != MCProof.LOSS);
+
         double initialScore = scorer.score(initGameState);
 
         for (MCChild child : root.children) {
-            SimulationGameState advanced = initGameState.copy(initGameState).advance(child.parentAction);
-            if (scorer.score(advanced) - scorer.score(initGameState) > 200  && child.parentAction.commencedBy().isMrX()) {
+            if (isFiltered(child.parentAction, initGameState, initialScore)) {
                 continue;
             }
-
-            if (scorer.score(advanced) > scorer.score(initGameState) && child.parentAction.commencedBy().isDetective()) {
+            if (hasUnlostChild && child.proof == MCProof.LOSS) {
                 continue;
             }
 
@@ -81,46 +180,128 @@ public class MonteCarlo implements Callable<MCChild> {
     }
 
     /**
-     * Calculates UCB1 for each child node and returns the one with the highest result.
-     * @param fork The node whose children are to be checked.
-     * @return The child with the highest UCB1 value.
+     * Calculates the best move at the root of an arena tree, in the same way as
+     * {@link #argMaxProb(MCRoot, SimulationGameState)}.
+     * @param arena The tree
+     * @param initGameState The game state at the root of the tree
+     * @return The move leading to the explored child of the root with the most wins
      */
-    public static MCChild argmaxUCB1(MCFork fork) {
-        if (fork.children.isEmpty()) {
-            return fork;
+    public static Move argMaxProb(MCArena arena, SimulationGameState initGameState) {
+        return argMaxProb(List.of(arena), initGameState);
+    }
+
+    /**
+     * Calculates the best move at the root of several arena trees that were built independently from the same
+     * position, summing the wins of each move over the trees as {@link #mergeRoots(List)} does.
+     * @param arenas The trees
+     * @param initGameState The game state at the root of the trees
+     * @return The move with the most wins
+     */
+    public static Move argMaxProb(List<MCArena> arenas, SimulationGameState initGameState) {
+        Map<Move, Double> winsByMove = new LinkedHashMap<>();
+        for (MCArena arena : arenas) {
+            int first = arena.firstChild(MCArena.ROOT);
+            for (int child = first; child < first + arena.numExplored(MCArena.ROOT); child++) {
+                winsByMove.merge(arena.move(child), arena.wins(child), Double::sum);
+            }
         }
-        MCChild out = fork.children.get(0);
+
+        Move out = winsByMove.keySet().iterator().next();
         double max = Double.NEGATIVE_INFINITY;
 
-        for (MCChild child : fork.children) {
-            double score = child.UCB1(explorationConst);
+        double initialScore = scorer.score(initGameState);
+
+        for (Map.Entry<Move, Double> entry : winsByMove.entrySet()) {
+            if (isFiltered(entry.getKey(), initGameState, initialScore)) {
+                continue;
+            }
+
+            double score = entry.getValue();
             if (score >= max) {
-                out = child;
+                out = entry.getKey();
                 max = score;
             }
         }
-
         return out;
     }
 
+    // Whether the move is left out when choosing the best move: a Mr X move that raises the score by more than 200,
+    // or a detective move that raises it at all
+    private static boolean isFiltered(Move move, SimulationGameState initGameState, double initialScore) {
+        initGameState.apply(move);
+        double advancedScore = scorer.score(initGameState);
+        initGameState.undo();
+
+        if (advancedScore - initialScore > 200  && move.commencedBy().isMrX()) {
+            return true;
+        }
+
+        return advancedScore > initialScore && move.commencedBy().isDetective();
+    }
+
+    /**
+     * Calculates UCB1 for each child node and returns the one with the highest result.
+     * @param fork The node whose children are to be checked.
+     * @return The child with the highest UCB1 value.
+     */
+    public static MCChild argmaxUCB1(MCFork fork) {
+        if (fork.children.isEmpty()) {
+            return fork;
+        }
+        return argmaxUCB1(fork.children, fork.numVisits);
+    }
+
     /**
      * Calculates UCB1 for each child node of a root, returning the one with the highest value
      * @param root The root whose children are to be checked
      * @return The child of the root with the highest UCB1 value.
      */
     public static MCChild argmaxUCB1(MCRoot root) {
-        MCChild out = root.children.get(0);
+        return argmaxUCB1(root.children, root.numVisits);
+    }
+
+    // Does the same as argmaxUCB1, but with the win rates blended with the AMAF win rates as in MCChild.UCB1(c, k)
+    private MCChild argmaxRAVE(List<MCChild> children, double parentVisits) {
+        double logParentVisits = Math.log(parentVisits);
+        MCChild out = null;
         double max = Double.NEGATIVE_INFINITY;
 
-        for (MCChild child : root.children) {
-            double score = child.UCB1(explorationConst);
-            if (score >= max) {
+        for (MCChild child : children) {
+            if (child.proof != MCProof.UNPROVEN) {
+                continue;
+            }
+            double score = child.raveValue(raveEquivalence) + explorationConst * Math.sqrt(logParentVisits / child.numVisits);
+            if (out == null || score >= max) {
                 out = child;
                 max = score;
             }
         }
 
-        return out;
+        // Only a node that is proven itself has nothing but proven children, and those are not searched
+        return out == null ? children.get(0) : out;
+    }
+
+    // Does the same as MCChild.UCB1 for every child, but only takes the logarithm of the parent's visits once. The
+    // children whose outcome is proven are left out, as there is nothing left to learn about them
+    private static MCChild argmaxUCB1(List<MCChild> children, double parentVisits) {
+        double logParentVisits = Math.log(parentVisits);
+        MCChild out = null;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (MCChild child : children) {
+            if (child.proof != MCProof.UNPROVEN) {
+                continue;
+            }
+            double visits = child.numVisits;
+            double score = child.numWins / visits + explorationConst * Math.sqrt(logParentVisits / visits);
+            if (out == null || score >= max) {
+                out = child;
+                max = score;
+            }
+        }
+
+        // Only a node that is proven itself has nothing but proven children, and those are not searched
+        return out == null ? children.get(0) : out;
     }
 
     /**
@@ -137,34 +318,327 @@ public class MonteCarlo implements Callable<MCChild> {
 
     /**
      * This function is the main function necessary for Monte Carlo to function; performing all the steps necessary to
-     * do an expansion of the tree. It expands the tree, then finds the result and back propagates it up the tree using
-     * various vistors. By calling this function multiple times, we are able to produce a full monte carlo tree.
+     * do an expansion of the tree. It goes down the tree choosing children by UCB1 until it reaches a node with a
+     * move that has not been explored yet, which it expands; then it finds the result and back propagates it up the
+     * path that it took. This does the same as running an {@link ExpandingMCNodeVisitor} and then an
+     * {@link UpdatingMCNodeVisitor}, but in loops over a path that is reused between rollouts, so that a rollout only
+     * allocates the node that it adds. If {@link #raveEquivalence} is set, the moves of the rollout also update the
+     * AMAF statistics of the children along the path, which the children are then chosen by as well. When a rollout
+     * reaches the end of the game, the outcome is proven for the nodes above it that it decides, and the proven nodes
+     * are not chosen again (MCTS-Solver, see {@link MCProof}). With progressive widening ({@link #wideningExponent}),
+     * a node only gets a new child once its visits allow for one, and the most promising move is explored first, so
+     * that Mr X's hundreds of moves (mostly double moves) do not keep the tree one move deep. By calling this
+     * function multiple times, we are able to produce a full monte carlo tree.
      * @param root The root of the tree to start at.
      */
     public void rollout(MCRoot root) {
+        pathLength = 0;
+        MCNode node = root;
+        while (true) {
+            addToPath(node);
+
+            LinkedList<Move> unexploredMoves;
+            LinkedList<MCChild> children;
+            SimulationGameState nodeGameState;
+            if (node instanceof MCRoot r) {
+                unexploredMoves = r.unexploredMoves;
+                children = r.children;
+                nodeGameState = r.currGameState;
+            } else if (node instanceof MCFork fork) {
+                unexploredMoves = fork.unexploredMoves;
+                children = fork.children;
+                nodeGameState = fork.currGameState;
+            } else {
+                break; // a leaf, where the game is over
+            }
+
+            boolean canWiden = !unexploredMoves.isEmpty() && children.size() < maxChildren(node.numVisits);
+            MCChild next = null;
+            if (!canWiden && !children.isEmpty()) {
+                next = raveEquivalence > 0 ? argmaxRAVE(children, node.numVisits) : argmaxUCB1(children, node.numVisits);
+            }
+            // The node is not proven, so if every child it has so far is, it must have more moves to widen to
+            if (!unexploredMoves.isEmpty() && (next == null || next.proof != MCProof.UNPROVEN)) {
+                Move move = wideningExponent > 0 ? removeMostPromising(unexploredMoves, nodeGameState) : unexploredMoves.pop();
+                MCChild expandedChild = expand(node, move);
+                children.add(expandedChild);
+                addToPath(expandedChild);
+                break;
+            }
+            if (next == null) {
+                break;
+            }
+            node = next;
+        }
+
+        MCNode tail = path[pathLength - 1];
+        if (tail instanceof MCLeaf leaf) {
+            prove(leaf);
+        }
+        if (raveEquivalence <= 0) {
+            double outcome = simulate(tail.currGameState, ((MCChild) path[1]).parentAction, random, null);
+            backPropagate(outcome);
+            return;
+        }
+
+        if (amafMoves == null) {
+            amafMoves = new AmafMoves(root.currGameState.getCompactState());
+        }
+        amafMoves.clear();
+        double outcome = simulate(tail.currGameState, ((MCChild) path[1]).parentAction, random, amafMoves::add);
+        updateAmaf(outcome);
+        backPropagate(outcome);
+    }
+
+    // The number of children that a node with the given visits may have: all of them, unless progressive widening
+    // is on, in which case they are added more and more slowly
+    private int maxChildren(double visits) {
+        if (wideningExponent <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.max(1, WIDENING_CONSTANT * Math.pow(visits, wideningExponent));
+    }
+
+    // Removes the unexplored move that looks the most promising from a cheap prior, for progressive widening. Mr X's
+    // moves are better the further they take him from the closest detective, and a double move has to take him
+    // further than a single move to be worth its ticket; the detectives' moves are better the closer they get to him
+    private Move removeMostPromising(LinkedList<Move> unexploredMoves, SimulationGameState simGameState) {
+        int mrXLocation = simGameState.getCompactState().mrXLocation();
+        int bestIndex = 0;
+        double bestPrior = Double.NEGATIVE_INFINITY;
+        int index = 0;
+        for (Move move : unexploredMoves) {
+            double prior;
+            if (move.commencedBy().isMrX()) {
+                prior = distanceToClosestDetective(priorDistances, simGameState, destination(move));
+                if (move instanceof Move.DoubleMove) {
+                    prior -= 1;
+                }
+            } else {
+                prior = -priorDistances.findDistance(destination(move), mrXLocation, simGameState);
+            }
+            if (prior > bestPrior) {
+                bestPrior = prior;
+                bestIndex = index;
+            }
+            index++;
+        }
+        return unexploredMoves.remove(bestIndex);
+    }
+
+    // Proves a leaf that the rollout has reached from its winner, and then the nodes above it on the path whose
+    // outcome that decides, stopping at the first one that is still unknown (MCTS-Solver)
+    private void prove(MCLeaf leaf) {
+        if (leaf.proof != MCProof.UNPROVEN) {
+            return;
+        }
+        boolean isMrXWinner = leaf.currGameState.getWinner().stream().anyMatch(Piece::isMrX);
+        leaf.proof = isMrXWinner == isMrXTurnInitially ? MCProof.WIN : MCProof.LOSS;
+
+        for (int i = pathLength - 2; i >= 0; i--) {
+            MCProof proof = proveFromChildren(path[i]);
+            if (proof == MCProof.UNPROVEN) {
+                return;
+            }
+            path[i].proof = proof;
+        }
+    }
+
+    // A node is decided as soon as one of its children is a win for the side that is moving there, and is a loss for
+    // that side once every one of its moves has been explored and is a loss
+    private MCProof proveFromChildren(MCNode node) {
+        LinkedList<Move> unexploredMoves;
+        LinkedList<MCChild> children;
+        if (node instanceof MCRoot r) {
+            unexploredMoves = r.unexploredMoves;
+            children = r.children;
+        } else {
+            MCFork fork = (MCFork) node;
+            unexploredMoves = fork.unexploredMoves;
+            children = fork.children;
+        }
 
-        // Run the expanding visitors on the node
-        ExpandingMCNodeVisitor expander = new ExpandingMCNodeVisitor();
+        boolean isRootSideMoving = children.getFirst().parentAction.commencedBy().isMrX() == isMrXTurnInitially;
+        MCProof win = isRootSideMoving ? MCProof.WIN : MCProof.LOSS;
+        MCProof loss = isRootSideMoving ? MCProof.LOSS : MCProof.WIN;
+        boolean allLost = unexploredMoves.isEmpty();
+        for (MCChild child : children) {
+            if (child.proof == win) {
+                return win;
+            }
+            allLost &= child.proof == loss;
+        }
+        return allLost ? loss : MCProof.UNPROVEN;
+    }
+
+    // The moves played below the node that the AMAF statistics are being updated for, when using RAVE
+    private AmafMoves amafMoves;
+
+    // Updates the AMAF statistics of every child of a node on the path whose move was played later on in the rollout,
+    // either further down the path or in the playout, which amafMoves holds to start with
+    private void updateAmaf(double outcome) {
+        for (int i = pathLength - 1; i >= 0; i--) {
+            if (i + 1 < pathLength) {
+                amafMoves.add(((MCChild) path[i + 1]).parentAction);
+            }
+
+            List<MCChild> children;
+            if (path[i] instanceof MCRoot r) {
+                children = r.children;
+            } else if (path[i] instanceof MCFork fork) {
+                children = fork.children;
+            } else {
+                continue;
+            }
+            for (MCChild child : children) {
+                if (amafMoves.contains(child.parentAction)) {
+                    child.amafVisits += 1;
+                    child.amafWins += outcome;
+                }
+            }
+        }
+    }
+
+    // Back propagates the outcome of a rollout along its path, and empties the path
+    private void backPropagate(double outcome) {
+        for (int i = pathLength - 1; i >= 0; i--) {
+            path[i].update(outcome);
+            path[i] = null;
+        }
+    }
+
+    // The path from the root taken by the rollout in progress
+    private MCNode[] path = new MCNode[32];
+    private int pathLength;
+
+    private void addToPath(MCNode node) {
+        if (pathLength == path.length) {
+            path = Arrays.copyOf(path, path.length * 2);
+        }
+        path[pathLength++] = node;
+    }
+
+    // Creates the child of a root or fork that a move leads to, a leaf if the game is over after it
+    private static MCChild expand(MCNode node, Move move) {
+        if (node instanceof MCRoot root) {
+            SimulationGameState advancedGameState = root.currGameState.copy(root.currGameState).advance(move);
+            return advancedGameState.getWinner().isEmpty()
+                    ? new MCFork(root, move, new LinkedList<>(), advancedGameState)
+                    : new MCLeaf(advancedGameState, root, move);
+        }
+        MCFork fork = (MCFork) node;
+        SimulationGameState advancedGameState = fork.currGameState.copy(fork.currGameState).advance(move);
+        return advancedGameState.getWinner().isEmpty()
+                ? new MCFork(fork, move, new LinkedList<>(), advancedGameState)
+                : new MCLeaf(advancedGameState, fork, move);
+    }
+
+    /**
+     * This function does the same as {@link #rollout(MCRoot)} on a tree that other threads are rolling out on at the
+     * same time (tree parallelisation). The path is chosen with virtual loss and the result is back propagated
+     * atomically, see {@link ConcurrentExpandingMCNodeVisitor} and {@link ConcurrentUpdatingMCNodeVisitor}.
+     * @param root The root of the shared tree
+     * @param virtualLoss The number of visits to add to each node on the path while the rollout is running
+     */
+    public void rolloutConcurrently(MCRoot root, double virtualLoss) {
+        ConcurrentExpandingMCNodeVisitor expander = new ConcurrentExpandingMCNodeVisitor(virtualLoss);
         root.accept(expander);
+        if (expander.nodesInPath.size() < 2) {
+            // We could not get past the root, so there is nothing to roll out from
+            root.addVirtualLoss(-virtualLoss);
+            return;
+        }
         MCNode tail = expander.nodesInPath.get(expander.nodesInPath.size() - 1);
-        double outcome = -1;
+        double outcome = simulate(tail.currGameState, ((MCChild) expander.nodesInPath.get(1)).parentAction, random, null);
 
+        tail.accept(new ConcurrentUpdatingMCNodeVisitor(outcome, virtualLoss));
+    }
+
+    /**
+     * This function does the same as {@link #rollout(MCRoot)} for several paths at once (leaf parallelisation). The
+     * paths are chosen one after the other on this thread, with virtual loss so that they spread out over the tree
+     * like the threads of {@link #rolloutConcurrently(MCRoot, double)} do. Then the playouts from the ends of the paths
+     * are run in parallel, each with its own stream of random numbers, and their outcomes are back propagated once
+     * they have all finished. Only this thread changes the tree, so the playouts are the only thing that is shared.
+     * @param root The root of the tree
+     * @param batchSize The number of paths to choose before playing out from them
+     * @param virtualLoss The number of visits to add to each node on a path while its playout is running
+     * @param executor The executor that runs the playouts
+     * @throws InterruptedException If this thread is interrupted while waiting for the playouts
+     * @return The number of playouts run, which is fewer than batchSize only if the root has no moves
+     * @throws ExecutionException If a playout throws an exception
+     */
+    public int rolloutBatch(MCRoot root, int batchSize, double virtualLoss, ExecutorService executor) throws InterruptedException, ExecutionException {
+        List<MCNode> tails = new ArrayList<>(batchSize);
+        List<Callable<Double>> playouts = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ConcurrentExpandingMCNodeVisitor expander = new ConcurrentExpandingMCNodeVisitor(virtualLoss);
+            root.accept(expander);
+            if (expander.nodesInPath.size() < 2) {
+                // The root has no moves, so there is nothing to roll out from
+                root.addVirtualLoss(-virtualLoss);
+                break;
+            }
+            MCNode tail = expander.nodesInPath.get(expander.nodesInPath.size() - 1);
+            Move firstMove = ((MCChild) expander.nodesInPath.get(1)).parentAction;
+            RandomGenerator playoutRandom = new SplittableRandom(random.nextLong());
+            tails.add(tail);
+            playouts.add(() -> simulate(tail.currGameState, firstMove, playoutRandom, null));
+        }
+
+        List<Future<Double>> outcomes = executor.invokeAll(playouts);
+        for (int i = 0; i < tails.size(); i++) {
+            tails.get(i).accept(new ConcurrentUpdatingMCNodeVisitor(outcomes.get(i).get(), virtualLoss));
+        }
+        return tails.size();
+    }
+
+    /**
+     * This function does the same as {@link #rollout(MCRoot)} on an arena tree. The tree plays the moves on the way
+     * down onto its game state, and takes them back off while back propagating.
+     * @param arena The tree
+     */
+    public void rollout(MCArena arena) {
+        int tail = arena.select(explorationConst);
+        if (tail == MCArena.ROOT) {
+            // The game is already over at the root, so there is nothing to roll out
+            return;
+        }
+        double outcome = simulate(arena.gameState(), arena.firstMoveOnPath(), random, null);
+        arena.backPropagate(outcome);
+    }
+
+    /**
+     * This function finds the outcome for the last node of a path through the tree, either by simulating the rest
+     * of the game (or the next {@link #lookAhead} moves of it, if there is a leaf evaluator) or, if the game is
+     * already over, from its winner.
+     * @param tailState The game state at the last node of the path, which is not changed
+     * @param firstMove The first move on the path, i.e. the move made from the root
+     * @param random The random number generator for the playouts, which only one thread may be using
+     * @param playedMoves A listener that is given each move of the playouts, or null
+     * @return 1 if the outcome is a win for the player who moved first, 0 otherwise, or the probability of a win if
+     * the playouts were cut short
+     */
+    private double simulate(SimulationGameState tailState, Move firstMove, RandomGenerator random, Consumer<Move> playedMoves) {
+        double outcome = -1;
 
         // Get the outcome for the tail node
-        if (tail.currGameState.getWinner().isEmpty()) {
+        if (tailState.getWinner().isEmpty() && leafEvaluator != null) {
+            outcome = simulateTruncated(tailState, random, playedMoves);
+        } else if (tailState.getWinner().isEmpty()) {
             //MonteCarloSimulator simulator = new MonteCarloSimulator(numSims, tail.currGameState, isMrXTurnInitially, lookAhead);
             //outcome = simulator.score(tail.currGameState);
-            Piece initPiece = ((MCFork) expander.nodesInPath.get(1)).parentAction.commencedBy();
+            Piece initPiece = firstMove.commencedBy();
             if (initPiece.isMrX()) {
                 //System.out.println("Choosing For MRX");
-                outcome = new NaiveSimulatorMrX(1, tail.currGameState).scoreMC(tail.currGameState);
+                outcome = new NaiveSimulatorMrX(1, tailState, random, playoutPolicy).scoreMC(tailState, playedMoves);
             } else {
-                outcome = new NaiveSimulatorDetective(1, tail.currGameState).scoreMC(tail.currGameState, initPiece);
+                outcome = new NaiveSimulatorDetective(1, tailState, random, playoutPolicy).scoreMC(tailState, initPiece, playedMoves);
             }
 
 
         } else {
-            boolean isMrXWinnerTerminalState = tail.currGameState.getWinner().stream().anyMatch(Piece::isMrX);
+            boolean isMrXWinnerTerminalState = tailState.getWinner().stream().anyMatch(Piece::isMrX);
             if (isMrXWinnerTerminalState == isMrXTurnInitially) {
                 outcome = 1;
             }
@@ -172,25 +646,283 @@ public class MonteCarlo implements Callable<MCChild> {
                 outcome = 0;
             }
         }
+        return outcome;
+    }
 
-        // back propagate the outcome
-        UpdatingMCNodeVisitor backpropogator = new UpdatingMCNodeVisitor(outcome);
+    /**
+     * This function plays numSims playouts of at most {@link #lookAhead} moves from a position, and averages their
+     * results. A playout that ends the game counts as a win or a loss as usual, and one that is cut short is scored by
+     * the {@link #leafEvaluator}, so that the cost of a rollout does not depend on how many rounds are left.
+     * @param tailState The game state to play out from, which is not changed
+     * @param random The random number generator for the playouts
+     * @param playedMoves A listener that is given each move of the playouts, or null
+     * @return The average probability of a win for the player who moved first
+     */
+    private double simulateTruncated(SimulationGameState tailState, RandomGenerator random, Consumer<Move> playedMoves) {
+        double mrXWins = 0;
+        for (int i = 0; i < numSims; i++) {
+            SimulationGameState playoutState = tailState.copy(tailState);
+            for (int ply = 0; ply < lookAhead && playoutState.getWinner().isEmpty(); ply++) {
+                Move m = playoutPolicy.chooseMove(playoutState, random);
+                if (m == null) {
+                    break;
+                }
+                playoutState.advance(m);
+                if (playedMoves != null) {
+                    playedMoves.accept(m);
+                }
+            }
+
+            if (playoutState.getWinner().isEmpty()) {
+                mrXWins += leafEvaluator.mrXWinProbability(playoutState);
+            } else if (playoutState.getWinner().stream().anyMatch(Piece::isMrX)) {
+                mrXWins++;
+            }
+        }
 
-        tail.accept(backpropogator);
+        double mrXWinProbability = mrXWins / numSims;
+        return isMrXTurnInitially ? mrXWinProbability : 1 - mrXWinProbability;
     }
 
     /**
-     * This function is a wrapper function that builds a monte carlo tree, by running rollouts multiple times.
+     * This function is a wrapper function that builds a monte carlo tree, by running rollouts multiple times. If
+     * there is a deadline, then we keep rolling out until it passes (always doing at least one rollout so that the
+     * root has a child to choose), otherwise we do {@link #treeIters} rollouts. Either way we stop as soon as the
+     * outcome from the root is proven, as no more rollouts could change which move is best.
      * @return A root of a monte carlo tree
      */
     public MCRoot buildTree() {
-        MCRoot root = new MCRoot(initGameState, new LinkedList<>());
-        for (int i = 0; i <= treeIters; i++) {
-            rollout(root);
+        return buildTree(new MCRoot(initGameState, new LinkedList<>()));
+    }
+
+    /**
+     * This function does the same as {@link #buildTree()}, but carries on expanding an existing tree, such as one
+     * found by {@link #findReusableRoot(MCRoot, SimulationGameState, int)}.
+     * @param root The root of the tree, whose game state is {@link #initGameState}
+     * @return The root
+     */
+    public MCRoot buildTree(MCRoot root) {
+        repeatRollouts(() -> rollout(root), () -> root.proof != MCProof.UNPROVEN,
+                remainingRollouts -> isDecided(root, remainingRollouts));
+        return root;
+    }
+
+    /**
+     * This function checks whether the rollouts that are left could change the move that
+     * {@link #argMaxProb(MCRoot, SimulationGameState)} chooses. It chooses the child with the most wins, and a rollout
+     * adds at most one win to one child, so once the lead of the best child over the next best is more than the
+     * rollouts that are left, it is certain to be chosen however those rollouts turn out. Proven children are treated
+     * the same way as there: a move proven to win is chosen straight away, and moves proven to lose are not ranked.
+     * @param root The root of the tree
+     * @param remainingRollouts The number of rollouts left in the budget
+     * @return Whether the move that would be chosen can no longer change
+     */
+    public boolean isDecided(MCRoot root, double remainingRollouts) {
+        for (MCChild child : root.children) {
+            if (child.proof == MCProof.WIN) {
+                return true;
+            }
         }
+        boolean hasUnlostChild = root.children.stream().anyMatch(child -> child.proof != MCProof.LOSS);
+
+        double best = Double.NEGATIVE_INFINITY;
+        double secondBest = Double.NEGATIVE_INFINITY;
+
+        double initialScore = scorer.score(root.currGameState);
+        for (MCChild child : root.children) {
+            if (isFiltered(child.parentAction, root.currGameState, initialScore)) {
+                continue;
+            }
+            if (hasUnlostChild && child.proof == MCProof.LOSS) {
+                continue;
+            }
+            if (child.numWins > best) {
+                secondBest = best;
+                best = child.numWins;
+            } else if (child.numWins > secondBest) {
+                secondBest = child.numWins;
+            }
+        }
+        // The moves that have not been explored yet have no wins, and nor might any others
+        return best - Math.max(secondBest, 0) > remainingRollouts;
+    }
+
+    /**
+     * This function does the same as {@link #buildTree()}, but stores the tree in an {@link MCArena}. The arena plays
+     * its moves on {@link #initGameState}, which is back at the root position when this returns.
+     * @return The arena holding the tree
+     */
+    public MCArena buildArenaTree() {
+        return buildArenaTree(false);
+    }
+
+    /**
+     * This function does the same as {@link #buildArenaTree()}, optionally sharing one node between the moves that
+     * lead to the same position, see {@link MCArena}. Arena nodes hold no proofs, so unlike {@link #buildTree()} this
+     * never stops early, and always uses its whole budget.
+     * @param sharesTranspositions Whether to turn the tree into a graph of positions
+     * @return The arena holding the tree
+     */
+    public MCArena buildArenaTree(boolean sharesTranspositions) {
+        MCArena arena = new MCArena(initGameState, ARENA_INITIAL_CAPACITY, sharesTranspositions);
+        repeatRollouts(() -> rollout(arena), () -> false, remainingRollouts -> false);
+        return arena;
+    }
+
+    /**
+     * This function adds this instance's rollouts to a tree that is shared with other threads. It has the same budget
+     * as {@link #buildTree()}, but always uses all of it: {@link #rolloutConcurrently(MCRoot, double)} does not prove
+     * nodes, and whether the best move is decided depends on the rollouts of the other threads too.
+     * @param root The root of the shared tree
+     * @param virtualLoss The virtual loss to use, see {@link #rolloutConcurrently(MCRoot, double)}
+     */
+    public void expandSharedTree(MCRoot root, double virtualLoss) {
+        repeatRollouts(() -> rolloutConcurrently(root, virtualLoss), () -> false, remainingRollouts -> false);
+    }
+
+    /**
+     * This function does the same as {@link #buildTree(MCRoot)}, but rolls out in batches, see
+     * {@link #rolloutBatch(MCRoot, int, double, ExecutorService)}. Without a deadline it stops after the batch that
+     * takes it past {@link #treeIters} rollouts. Batched rollouts do not prove nodes, so it never stops early, and the
+     * rollouts it did are recorded in {@link #searchStats}.
+     * @param root The root of the tree, whose game state is {@link #initGameState}
+     * @param batchSize The number of playouts to run in parallel
+     * @param virtualLoss The virtual loss to use while the playouts are running
+     * @param executor The executor that runs the playouts
+     * @return The root
+     * @throws InterruptedException If this thread is interrupted while waiting for the playouts
+     * @throws ExecutionException If a playout throws an exception
+     */
+    public MCRoot buildTreeInBatches(MCRoot root, int batchSize, double virtualLoss, ExecutorService executor) throws InterruptedException, ExecutionException {
+        if (batchSize < 1) throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        int done = 0;
+        if (deadline.isBounded()) {
+            do {
+                done += rolloutBatch(root, batchSize, virtualLoss, executor);
+            } while (!deadline.expired());
+        } else {
+            for (int i = 0; i <= treeIters; i += batchSize) {
+                done += rolloutBatch(root, batchSize, virtualLoss, executor);
+            }
+        }
+        searchStats = new MCSearchStats(done, 0, 0);
         return root;
     }
 
+    // Rolls out until the deadline or treeIters, or until the outcome from the root is known, or (checked every so
+    // often, given how many rollouts are left) the move that would be chosen can no longer change. Records what was
+    // done and saved in searchStats
+    private void repeatRollouts(Runnable rollout, BooleanSupplier isSolved, DoublePredicate isDecided) {
+        long start = System.nanoTime();
+        int done = 0;
+        while (true) {
+            boolean isOutOfBudget = deadline.isBounded() ? done > 0 && deadline.expired() : done > treeIters;
+            if (isOutOfBudget) {
+                searchStats = new MCSearchStats(done, 0, 0);
+                return;
+            }
+            if (isSolved.getAsBoolean()
+                    || (done % DECISION_CHECK_INTERVAL == 0 && done > 0 && isDecided.test(remainingRollouts(done, start)))) {
+                break;
+            }
+            rollout.run();
+            done++;
+        }
+
+        // We stopped early, so work out what was left of the budget from the rate that we were going at
+        long elapsedNanos = System.nanoTime() - start;
+        if (deadline.isBounded()) {
+            searchStats = new MCSearchStats(done, (long) remainingRollouts(done, start), deadline.remainingNanos());
+        } else {
+            long rolloutsSaved = treeIters + 1L - done;
+            searchStats = new MCSearchStats(done, rolloutsSaved, done == 0 ? 0 : elapsedNanos / done * rolloutsSaved);
+        }
+    }
+
+    // The number of rollouts left in the budget, estimated from the rate so far if the budget is a deadline
+    private double remainingRollouts(int done, long start) {
+        if (!deadline.isBounded()) {
+            return treeIters + 1 - done;
+        }
+        long elapsedNanos = Math.max(System.nanoTime() - start, 1);
+        return (double) done / elapsedNanos * deadline.remainingNanos();
+    }
+
+
+    /**
+     * This function merges the statistics of trees that were built independently from the same position (root
+     * parallelisation). The visits and wins of the root children for the same move are summed into a new root, so
+     * that the trees themselves are left as they were and can be carried on with on the next turn.
+     * @param roots The roots of the trees, which must all start from the same position
+     * @return A new root, whose children hold the merged statistics of each move
+     */
+    public static MCRoot mergeRoots(List<MCRoot> roots) {
+        MCRoot merged = new MCRoot(roots.get(0).currGameState, new LinkedList<>());
+        Map<Move, MCChild> childrenByMove = new HashMap<>();
+
+        for (MCRoot root : roots) {
+            merged.numVisits += root.numVisits;
+            merged.numWins += root.numWins;
+            for (MCChild child : root.children) {
+                MCChild mergedChild = childrenByMove.get(child.parentAction);
+                if (mergedChild == null) {
+                    if (child.currGameState.getWinner().isEmpty()) {
+                        mergedChild = new MCFork(merged, child.parentAction, new LinkedList<>(), child.currGameState);
+                    } else {
+                        mergedChild = new MCLeaf(child.currGameState, merged, child.parentAction);
+                    }
+                    merged.children.add(mergedChild);
+                    merged.unexploredMoves.remove(child.parentAction);
+                    childrenByMove.put(child.parentAction, mergedChild);
+                }
+                mergedChild.numVisits += child.numVisits;
+                mergedChild.numWins += child.numWins;
+                // The trees all search the same game, so a move that one of them has proven is proven for them all
+                if (child.proof != MCProof.UNPROVEN) {
+                    mergedChild.proof = child.proof;
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * This function looks for the position that we are now in among the descendants of the root of the tree that was
+     * built on an earlier turn, so that its statistics are not thrown away. The position is matched by its
+     * {@link SimulationGameState#getZobristKey() Zobrist key}, which covers the locations and tickets of every piece,
+     * the pieces still to move, the round and where Mr X was last revealed, so the moves that were played since do
+     * not have to be known. The key does not cover the order of the tickets in Mr X's log, so the matches can differ
+     * in that as well as in the order the detectives moved in; then we take the match that was visited the most.
+     * @param previous The root of the earlier tree
+     * @param currGameState The game state that we are now in
+     * @param maxDepth The number of moves since the earlier tree was built to look through
+     * @return A root holding the statistics of the matching descendant, or null if there is none
+     */
+    public static MCRoot findReusableRoot(MCRoot previous, SimulationGameState currGameState, int maxDepth) {
+        long key = currGameState.getZobristKey();
+        MCFork best = null;
+        List<MCChild> level = new LinkedList<>(previous.children);
+
+        for (int depth = 1; depth <= maxDepth && !level.isEmpty(); depth++) {
+            List<MCChild> nextLevel = new LinkedList<>();
+            for (MCChild child : level) {
+                if (!(child instanceof MCFork fork)) {
+                    continue;
+                }
+                if (fork.currGameState.getZobristKey() == key && (best == null || fork.numVisits > best.numVisits)) {
+                    best = fork;
+                }
+                nextLevel.addAll(fork.children);
+            }
+            level = nextLevel;
+        }
+
+        if (best == null || best.numVisits == 0) {
+            return null;
+        }
+        return new MCRoot(best, currGameState);
+    }
+
     /**
      * A wrapper function that is used to abstract away the full monte carlo simulation. It builds a tree and then
      * selects the highest scoring child.
@@ -0,0 +1,47 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.leafevaluators;
+
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceStrategy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.distanceToClosestDetective;
+
+/**
+ * Class implementing a {@link LeafEvaluator} from the number of moves that the closest detective is away from Mr X.
+ * Mr X is caught by the detective that reaches him first, so unlike the sum of the distances that
+ * {@link uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies.FastScorer} uses, a single detective close by counts
+ * against him however far away the others are.
+ */
+public class ClosestDetectiveEvaluator implements LeafEvaluator {
+
+    private final DistanceStrategy distances = new PrecomputedDistance(DistanceTable.Variant.DIJKSTRA);
+    private final double midpoint;
+    private final double scale;
+
+    /**
+     * Constructor for an evaluator that gives Mr X even odds when the closest detective is two moves away
+     */
+    public ClosestDetectiveEvaluator() {
+        this(2, 0.75);
+    }
+
+    /**
+     * Constructor for an evaluator
+     * @param midpoint The distance in moves at which Mr X and the detectives are equally likely to win
+     * @param scale How many moves the distance has to change by to make a difference to the probability, greater than 0
+     */
+    public ClosestDetectiveEvaluator(double midpoint, double scale) {
+        if (scale <= 0) throw new IllegalArgumentException("Invalid scale: " + scale);
+        this.midpoint = midpoint;
+        this.scale = scale;
+    }
+
+    @Override
+    public double mrXWinProbability(SimulationGameState simGameState) {
+        // The simulation knows where Mr X really is, even when he has not been revealed
+        int mrXLocation = simGameState.getCompactState().mrXLocation();
+        double closest = distanceToClosestDetective(distances, simGameState, mrXLocation);
+        return LeafEvaluator.sigmoid(closest, midpoint, scale);
+    }
+}
@@ -0,0 +1,29 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.leafevaluators;
+
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+/**
+ * Strategy for turning a position where a monte carlo playout was cut short into a result, instead of playing the
+ * game to the end. Like a {@link uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.PlayoutPolicy}, an
+ * evaluator is shared by the threads of a search, so it must not keep any state of its own that changes.
+ */
+public interface LeafEvaluator {
+
+    /**
+     * This function estimates who is going to win from a position where the game is not over
+     * @param simGameState The position at the end of the playout
+     * @return The probability that Mr X wins, between 0 and 1
+     */
+    double mrXWinProbability(SimulationGameState simGameState);
+
+    /**
+     * This function squashes a value onto a probability with a logistic curve
+     * @param value The value to squash
+     * @param midpoint The value that gives a probability of one half
+     * @param scale How far from the midpoint the value has to be for the probability to be about 0.27 or 0.73
+     * @return The probability
+     */
+    static double sigmoid(double value, double midpoint, double scale) {
+        return 1 / (1 + Math.exp(-(value - midpoint) / scale));
+    }
+}
@@ -0,0 +1,46 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.leafevaluators;
+
+import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies.FastScorer;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+/**
+ * Class implementing a {@link LeafEvaluator} that puts the score of a {@link ScoringStrategy} through a sigmoid. The
+ * scorers score positions higher the better they are for Mr X, so a higher score gives Mr X a higher probability.
+ */
+public class ScoreSigmoidEvaluator implements LeafEvaluator {
+
+    private final ScoringStrategy scorer;
+    private final double midpoint;
+    private final double scale;
+
+    /**
+     * Constructor for an evaluator using a {@link FastScorer} with the greedy A* distances, as the monte carlo search
+     * does when it filters moves
+     * @param midpoint The score at which Mr X and the detectives are equally likely to win
+     * @param scale How much the score has to change to make a difference to the probability
+     */
+    public ScoreSigmoidEvaluator(double midpoint, double scale) {
+        this(new FastScorer(new PrecomputedDistance(DistanceTable.Variant.GREEDY_A_STAR)), midpoint, scale);
+    }
+
+    /**
+     * Constructor for an evaluator using any scorer
+     * @param scorer The scorer, which must be safe to share between threads
+     * @param midpoint The score at which Mr X and the detectives are equally likely to win
+     * @param scale How much the score has to change to make a difference to the probability, greater than 0
+     */
+    public ScoreSigmoidEvaluator(ScoringStrategy scorer, double midpoint, double scale) {
+        if (scale <= 0) throw new IllegalArgumentException("Invalid scale: " + scale);
+        this.scorer = scorer;
+        this.midpoint = midpoint;
+        this.scale = scale;
+    }
+
+    @Override
+    public double mrXWinProbability(SimulationGameState simGameState) {
+        return LeafEvaluator.sigmoid(scorer.score(simGameState), midpoint, scale);
+    }
+}
@@ -2,6 +2,7 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.naivemontecarlo;
 
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.MoveSelectingStrategy;
 
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
@@ -24,4 +25,14 @@ public class NaiveMonteCarloStrategy implements MoveSelectingStrategy {
     public Move selectForDetective(Board board) {
         return new NaiveSimulatorDetective(60, simGameState).argMax();
     }
+
+    @Override
+    public Move selectForMrX(Board board, Deadline deadline) {
+        return new NaiveSimulatorMrX(60, simGameState).argMax(deadline);
+    }
+
+    @Override
+    public Move selectForDetective(Board board, Deadline deadline) {
+        return new NaiveSimulatorDetective(60, simGameState).argMax(deadline);
+    }
 }
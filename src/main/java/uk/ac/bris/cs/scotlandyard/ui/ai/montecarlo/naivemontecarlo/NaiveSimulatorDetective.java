@@ -3,14 +3,19 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.naivemontecarlo;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
-import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.PlayoutPolicy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.UniformPlayout;
 import uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies.FastScorer;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
 import java.util.Optional;
-
-import static uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.MCSimService.chooseRandomMove;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
 
 /**
  * Class that simulates Scotland Yard from the perspective of the detective
@@ -19,6 +24,8 @@ public class NaiveSimulatorDetective {
     int numSim;
     SimulationGameState initGameState;
     ScoringStrategy scorer;
+    RandomGenerator random;
+    PlayoutPolicy policy;
 
     /**
      * Constructor to playout Scotland Yard from the perspective of the detectives
@@ -26,9 +33,32 @@ public class NaiveSimulatorDetective {
      * @param initGameState initial game state to begin the simulation
      */
     public NaiveSimulatorDetective(int numSims, SimulationGameState initGameState) {
+        this(numSims, initGameState, new SplittableRandom());
+    }
+
+    /**
+     * Constructor to playout Scotland Yard from the perspective of the detectives, with a given stream of random numbers
+     * @param numSims number of simulations to average from
+     * @param initGameState initial game state to begin the simulation
+     * @param random random number generator used to choose the moves in the playouts
+     */
+    public NaiveSimulatorDetective(int numSims, SimulationGameState initGameState, RandomGenerator random) {
+        this(numSims, initGameState, random, new UniformPlayout());
+    }
+
+    /**
+     * Constructor to playout Scotland Yard from the perspective of the detectives, with a given playout policy
+     * @param numSims number of simulations to average from
+     * @param initGameState initial game state to begin the simulation
+     * @param random random number generator used to choose the moves in the playouts
+     * @param policy the policy that chooses the moves in the playouts
+     */
+    public NaiveSimulatorDetective(int numSims, SimulationGameState initGameState, RandomGenerator random, PlayoutPolicy policy) {
+        this.policy = policy;
         this.numSim = numSims;
         this.initGameState = initGameState;
-        scorer = new FastScorer(new GreedyAStar());
+        this.random = random;
+        scorer = new FastScorer(new PrecomputedDistance(DistanceTable.Variant.GREEDY_A_STAR));
     }
 
     /**
@@ -38,18 +68,34 @@ public class NaiveSimulatorDetective {
      * @return 1 if its a victory for the initial piece and 0 if its not
      */
     public int runSimMrX(SimulationGameState advancedGameState, Piece initialPiece) {
+        return runSimMrX(advancedGameState, initialPiece, null);
+    }
+
+    /**
+     * Simulation of Scotland Yard, telling a listener about every move that is played
+     * @param advancedGameState game state to begin the simulation
+     * @param initialPiece the piece that the game is simulated from the perspective of
+     * @param playedMoves listener that is given each move of the playout, or null
+     * @return 1 if its a victory for the initial piece and 0 if its not
+     */
+    public int runSimMrX(SimulationGameState advancedGameState, Piece initialPiece, Consumer<Move> playedMoves) {
 
         //advance it on the move you want to simulate on
         double initialScore = scorer.score(initGameState);
 
+        // The moves are played in place on one copy, so that the caller's state is left as it was
+        advancedGameState = advancedGameState.copy(advancedGameState);
         while (advancedGameState.getWinner().isEmpty()) {
 
-            Optional<Move> m = chooseRandomMove(advancedGameState.getAvailableMoves());
-            if (m.isEmpty()) {
+            Move m = policy.chooseMove(advancedGameState, random);
+            if (m == null) {
                 break;
             }
 
-            advancedGameState = advancedGameState.copy(advancedGameState).advance(m.get());
+            advancedGameState.advance(m);
+            if (playedMoves != null) {
+                playedMoves.accept(m);
+            }
         }
 
         boolean isMrXWinner = advancedGameState.getWinner().stream().anyMatch(x -> x.isMrX());
@@ -104,9 +150,20 @@ public class NaiveSimulatorDetective {
      * @return 1 if the simulations in a victory, 0 otherwise
      */
     public int scoreMC(SimulationGameState simGameState, Piece initPiece) {
+        return scoreMC(simGameState, initPiece, null);
+    }
+
+    /**
+     * Scoring function used for monte carlo rollouts, telling a listener about every move of the simulations
+     * @param simGameState initial game state to run the simulations on
+     * @param initPiece the piece from who's perspective the simulation is run
+     * @param playedMoves listener that is given each move of the simulations, or null
+     * @return 1 if the simulations in a victory, 0 otherwise
+     */
+    public int scoreMC(SimulationGameState simGameState, Piece initPiece, Consumer<Move> playedMoves) {
         double outNum = 0;
         for (int i = 0; i < numSim; i++) {
-            outNum += runSimMrX(simGameState, initPiece);
+            outNum += runSimMrX(simGameState, initPiece, playedMoves);
         }
 
         if (outNum >= numSim - outNum) {
@@ -136,4 +193,18 @@ public class NaiveSimulatorDetective {
 
         return outMove;
     }
+
+    /**
+     * Chooses the move with the highest probability of winning that can be found before a deadline, simulating every
+     * move once per pass, see {@link RoundRobinSimulation}
+     * @param deadline the time by which to stop simulating, or {@link Deadline#NONE} to simulate each move numSim times
+     * @return move with highest probability
+     */
+    public Move argMax(Deadline deadline) {
+        if (!deadline.isBounded()) {
+            return argMax();
+        }
+        return RoundRobinSimulation.argMax(initGameState, deadline,
+                move -> runSimMrX(initGameState.copy(initGameState).advance(move), move.commencedBy()));
+    }
 }
@@ -1,14 +1,18 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.naivemontecarlo;
 
 import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
-import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.PlayoutPolicy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.UniformPlayout;
 import uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies.FastScorer;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
-import java.util.Optional;
-
-import static uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.MCSimService.chooseRandomMove;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
 
 /**
  * Class that simulates Scotland Yard from the perspective of MrX
@@ -17,6 +21,8 @@ public class NaiveSimulatorMrX {
     int numSim;
     SimulationGameState initGameState;
     ScoringStrategy scorer;
+    RandomGenerator random;
+    PlayoutPolicy policy;
 
     /**
      * Constructor to playout Scotland Yard from the perspective of MrX
@@ -24,9 +30,32 @@ public class NaiveSimulatorMrX {
      * @param initGameState initial game state to begin the simulation
      */
     public NaiveSimulatorMrX(int numSims, SimulationGameState initGameState) {
+        this(numSims, initGameState, new SplittableRandom());
+    }
+
+    /**
+     * Constructor to playout Scotland Yard from the perspective of MrX, with a given stream of random numbers
+     * @param numSims number of simulations to average from
+     * @param initGameState initial game state to begin the simulation
+     * @param random random number generator used to choose the moves in the playouts
+     */
+    public NaiveSimulatorMrX(int numSims, SimulationGameState initGameState, RandomGenerator random) {
+        this(numSims, initGameState, random, new UniformPlayout());
+    }
+
+    /**
+     * Constructor to playout Scotland Yard from the perspective of MrX, with a given playout policy
+     * @param numSims number of simulations to average from
+     * @param initGameState initial game state to begin the simulation
+     * @param random random number generator used to choose the moves in the playouts
+     * @param policy the policy that chooses the moves in the playouts
+     */
+    public NaiveSimulatorMrX(int numSims, SimulationGameState initGameState, RandomGenerator random, PlayoutPolicy policy) {
+        this.policy = policy;
         this.numSim = numSims;
         this.initGameState = initGameState;
-        scorer = new FastScorer(new GreedyAStar());
+        this.random = random;
+        scorer = new FastScorer(new PrecomputedDistance(DistanceTable.Variant.GREEDY_A_STAR));
     }
 
     /**
@@ -35,15 +64,30 @@ public class NaiveSimulatorMrX {
      * @return 1 if its a victory for the initial piece and 0 if its not
      */
     public int runSimMrX(SimulationGameState advancedGameState) {
+        return runSimMrX(advancedGameState, null);
+    }
+
+    /**
+     * Simulation of Scotland Yard, telling a listener about every move that is played
+     * @param advancedGameState game state to begin the simulation
+     * @param playedMoves listener that is given each move of the playout, or null
+     * @return 1 if its a victory for the initial piece and 0 if its not
+     */
+    public int runSimMrX(SimulationGameState advancedGameState, Consumer<Move> playedMoves) {
 
+        // The moves are played in place on one copy, so that the caller's state is left as it was
+        advancedGameState = advancedGameState.copy(advancedGameState);
         while (advancedGameState.getWinner().isEmpty()) {
 
-            Optional<Move> m = chooseRandomMove(advancedGameState.getAvailableMoves());
-            if (m.isEmpty()) {
+            Move m = policy.chooseMove(advancedGameState, random);
+            if (m == null) {
                 break;
             }
 
-            advancedGameState = advancedGameState.copy(advancedGameState).advance(m.get());
+            advancedGameState.advance(m);
+            if (playedMoves != null) {
+                playedMoves.accept(m);
+            }
         }
 
         boolean isMrXWinner = advancedGameState.getWinner().stream().anyMatch(x -> x.isMrX());
@@ -76,9 +120,19 @@ public class NaiveSimulatorMrX {
      * @return 1 if the simulations in a victory, 0 otherwise
      */
     public int scoreMC(SimulationGameState simGameState) {
+        return scoreMC(simGameState, null);
+    }
+
+    /**
+     * Scoring function used for monte carlo rollouts, telling a listener about every move of the simulations
+     * @param simGameState initial game state to run the simulations on
+     * @param playedMoves listener that is given each move of the simulations, or null
+     * @return 1 if the simulations in a victory, 0 otherwise
+     */
+    public int scoreMC(SimulationGameState simGameState, Consumer<Move> playedMoves) {
         double outNum = 0;
         for (int i = 0; i < numSim; i++) {
-            outNum += runSimMrX(simGameState);
+            outNum += runSimMrX(simGameState, playedMoves);
         }
 
         if (outNum >= numSim  - outNum) {
@@ -108,4 +162,18 @@ public class NaiveSimulatorMrX {
 
         return outMove;
     }
+
+    /**
+     * Chooses the move with the highest probability of winning that can be found before a deadline, simulating every
+     * move once per pass, see {@link RoundRobinSimulation}
+     * @param deadline the time by which to stop simulating, or {@link Deadline#NONE} to simulate each move numSim times
+     * @return move with highest probability
+     */
+    public Move argMax(Deadline deadline) {
+        if (!deadline.isBounded()) {
+            return argMax();
+        }
+        return RoundRobinSimulation.argMax(initGameState, deadline,
+                move -> runSimMrX(initGameState.copy(initGameState).advance(move)));
+    }
 }
@@ -0,0 +1,54 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.naivemontecarlo;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Class holding the deadline-bounded move choice shared by {@link NaiveSimulatorMrX} and
+ * {@link NaiveSimulatorDetective}, which only differ in how they simulate the game after a move.
+ */
+final class RoundRobinSimulation {
+
+    private RoundRobinSimulation() {}
+
+    /**
+     * Chooses the move with the highest probability of winning that can be found before a deadline. Rather than
+     * simulating each move numSim times in turn, we simulate every move once per pass until the deadline, so that
+     * all of the moves have been sampled (almost) equally often when time runs out.
+     * @param initGameState the game state to choose a move in
+     * @param deadline the time by which to stop simulating, which must be bounded
+     * @param simulate plays one simulation from the game state after a move, returning 1 if it is won and 0 if not
+     * @return move with highest probability
+     */
+    static Move argMax(SimulationGameState initGameState, Deadline deadline, ToIntFunction<Move> simulate) {
+        List<Move> moves = List.copyOf(initGameState.getAvailableMoves());
+        int[] wins = new int[moves.size()];
+        int[] sims = new int[moves.size()];
+
+        simulating:
+        while (true) {
+            for (int i = 0; i < moves.size(); i++) {
+                wins[i] += simulate.applyAsInt(moves.get(i));
+                sims[i]++;
+                if (deadline.expired()) {
+                    break simulating;
+                }
+            }
+        }
+
+        double maxScore = Double.NEGATIVE_INFINITY;
+        Move outMove = moves.get(0);
+        for (int i = 0; i < moves.size(); i++) {
+            if (sims[i] > 0 && (double) wins[i] / sims[i] >= maxScore) {
+                maxScore = (double) wins[i] / sims[i];
+                outMove = moves.get(i);
+            }
+        }
+
+        return outMove;
+    }
+}
@@ -0,0 +1,47 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceStrategy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.util.Iterator;
+import java.util.random.RandomGenerator;
+
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.destination;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.distanceToClosestDetective;
+
+/**
+ * Class implementing a {@link PlayoutPolicy} where Mr X never ends his move next to a detective if he can help it,
+ * which is the most common way for a random playout to lose him the game straight away. He picks uniformly among the
+ * moves that do not, and the detectives move uniformly at random.
+ */
+public class AvoidDetectivesPlayout implements PlayoutPolicy {
+
+    private final DistanceStrategy distances = new PrecomputedDistance(DistanceTable.Variant.DIJKSTRA);
+
+    @Override
+    public Move chooseMove(SimulationGameState simGameState, RandomGenerator random) {
+        if (!simGameState.getCompactState().isMrXRemaining()) {
+            return simGameState.getRandomMove(random);
+        }
+
+        // Reservoir sampling: the n'th safe move replaces the one chosen so far with probability 1/n, so after a
+        // single pass over the streamed moves every safe move is equally likely, without collecting them
+        Move chosen = null;
+        int safeMoves = 0;
+        for (Iterator<Move> moves = simGameState.getAvailableMoves(move -> true); moves.hasNext(); ) {
+            Move move = moves.next();
+            if (isSafe(simGameState, move) && random.nextInt(++safeMoves) == 0) {
+                chosen = move;
+            }
+        }
+        return chosen != null ? chosen : simGameState.getRandomMove(random);
+    }
+
+    // Whether no detective can reach the destination of the move in one move
+    private boolean isSafe(SimulationGameState simGameState, Move move) {
+        return distanceToClosestDetective(distances, simGameState, destination(move)) > 1;
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceStrategy;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompactGameState;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.util.Iterator;
+import java.util.random.RandomGenerator;
+
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.destination;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.distanceToClosestDetective;
+
+/**
+ * Class implementing a {@link PlayoutPolicy} that usually plays the greedy move by a distance table: Mr X moves as
+ * far from the closest detective as he can, and the detectives move as close to Mr X as they can. A double move ends
+ * further away than a single move almost every time, so it is charged for its extra ticket; otherwise greedy playouts
+ * would use up Mr X's double tickets in their first few moves. With probability
+ * epsilon a uniformly random move is played instead, so that the playouts do not all go the same way.
+ */
+public class EpsilonGreedyPlayout implements PlayoutPolicy {
+
+    private final double epsilon;
+    private final DistanceStrategy distances;
+
+    // How many moves further than a single move a double move has to take Mr X to be worth its ticket
+    private static final double DOUBLE_MOVE_COST = 1;
+
+    /**
+     * Constructor for an epsilon greedy playout policy that measures distances in moves
+     * @param epsilon The probability of playing a random move, between 0 and 1
+     */
+    public EpsilonGreedyPlayout(double epsilon) {
+        this(epsilon, DistanceTable.Variant.DIJKSTRA);
+    }
+
+    /**
+     * Constructor for an epsilon greedy playout policy
+     * @param epsilon The probability of playing a random move, between 0 and 1
+     * @param variant The distances that the greedy moves are chosen by
+     */
+    public EpsilonGreedyPlayout(double epsilon, DistanceTable.Variant variant) {
+        if (epsilon < 0 || epsilon > 1) throw new IllegalArgumentException("Invalid epsilon: " + epsilon);
+        this.epsilon = epsilon;
+        this.distances = new PrecomputedDistance(variant);
+    }
+
+    @Override
+    public Move chooseMove(SimulationGameState simGameState, RandomGenerator random) {
+        CompactGameState state = simGameState.getCompactState();
+        int mrXLocation = state.mrXLocation();
+        // Before Mr X has been seen the detectives have nothing to be greedy about
+        if (mrXLocation < 0 || random.nextDouble() < epsilon) {
+            return simGameState.getRandomMove(random);
+        }
+
+        // The greedy move only needs each move once, so they are streamed rather than collected into a set
+        boolean isMrXTurn = state.isMrXRemaining();
+        Move best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Iterator<Move> moves = simGameState.getAvailableMoves(move -> true); moves.hasNext(); ) {
+            Move move = moves.next();
+            double score;
+            if (isMrXTurn) {
+                score = distanceToClosestDetective(distances, simGameState, destination(move));
+                if (move instanceof Move.DoubleMove) {
+                    score -= DOUBLE_MOVE_COST;
+                }
+            } else {
+                score = -distances.findDistance(destination(move), mrXLocation, simGameState);
+            }
+            // On a tie a single move is kept over a double move, so the double ticket is saved for when it helps
+            if (score > bestScore || (score == bestScore && best instanceof Move.DoubleMove)) {
+                best = move;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,22 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Strategy for choosing the moves of a monte carlo playout. A policy is called for every move of every playout, so
+ * implementations should only look at the game state and precomputed data, and not allocate. They are shared between
+ * the threads of a search, so they must not keep any state of their own that changes.
+ */
+public interface PlayoutPolicy {
+
+    /**
+     * This function chooses the next move of a playout
+     * @param simGameState The current game state
+     * @param random The random number generator of the playout
+     * @return One of the available moves, or null if there are none
+     */
+    Move chooseMove(SimulationGameState simGameState, RandomGenerator random);
+}
@@ -0,0 +1,45 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies;
+
+import com.google.common.collect.ImmutableSet;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+/**
+ * Class implementing a {@link PlayoutPolicy} that picks every available move with the same probability. The move is
+ * sampled from the packed game state, so the playout never builds the set of available moves.
+ */
+public class UniformPlayout implements PlayoutPolicy {
+
+    @Override
+    public Move chooseMove(SimulationGameState simGameState, RandomGenerator random) {
+        return simGameState.getRandomMove(random);
+    }
+
+    /**
+     * This function picks a move uniformly at random. The moves that the simulation generates are in an
+     * {@link ImmutableSet}, whose list view is cached, so picking from them does not copy anything.
+     * @param moves The moves to pick from
+     * @param random The random number generator to use
+     * @return The move, or null if there are no moves
+     */
+    public static Move randomMove(Set<Move> moves, RandomGenerator random) {
+        int size = moves.size();
+        if (size == 0) {
+            return null;
+        }
+        int index = random.nextInt(size);
+        if (moves instanceof ImmutableSet<Move> immutableMoves) {
+            return immutableMoves.asList().get(index);
+        }
+
+        Iterator<Move> iterator = moves.iterator();
+        for (int i = 0; i < index; i++) {
+            iterator.next();
+        }
+        return iterator.next();
+    }
+}
@@ -3,6 +3,7 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.particleSwarmOpt;
 import uk.ac.bris.cs.scotlandyard.model.GameSetup;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.AStar;
 import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
@@ -184,10 +185,19 @@ public class PSO {
      */
 
     public void runSwarmOpt(int epochs) {
+        runSwarmOpt(epochs, Deadline.NONE);
+    }
+
+    /**
+     * Run PSO, stopping early if the deadline passes
+     * @param epochs number of iterations to run PSO
+     * @param deadline the time by which to stop iterating
+     */
+    public void runSwarmOpt(int epochs, Deadline deadline) {
         //initialize the particles from the detective locations
         ArrayList<Particle> particles = new ArrayList<>(detectives.stream().map(x -> new Particle(x.location())).toList());
 
-        for (int epoch = 0; epoch <= epochs; epoch++) {
+        for (int epoch = 0; epoch <= epochs && !deadline.expired(); epoch++) {
             particles.forEach(Particle::updateVelocity);
             particles.forEach(Particle::updateLocation);
         }
@@ -224,8 +234,18 @@ public class PSO {
      * @return move that results in the game state with the least distance between the swarm optimum found and the detectives
      */
     public Move chooseMove(int epochs) {
+        return chooseMove(epochs, Deadline.NONE);
+    }
+
+    /**
+     * Argmin over the set of available moves, where PSO stops early if the deadline passes
+     * @param epochs maximum number of iterations to run PSO
+     * @param deadline the time by which to stop iterating
+     * @return move that results in the game state with the least distance between the swarm optimum found and the detectives
+     */
+    public Move chooseMove(int epochs, Deadline deadline) {
 
-        runSwarmOpt(epochs);
+        runSwarmOpt(epochs, deadline);
 
         double min = Double.POSITIVE_INFINITY;
         Move outMove = initGameState.getAvailableMoves().stream().toList().get(0);
@@ -2,6 +2,7 @@ package uk.ac.bris.cs.scotlandyard.ui.ai.particleSwarmOpt;
 
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.Deadline;
 import uk.ac.bris.cs.scotlandyard.ui.ai.MoveSelectingStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.factories.MinimaxFactory;
@@ -42,4 +43,15 @@ public class ParticleSwarmStrategy implements MoveSelectingStrategy {
         PSO pso = new PSO(new SimulationGameState(board), c1, c2, w);
         return pso.chooseMove(swarmEpochs);
     }
+
+    @Override
+    public Move selectForMrX(Board board, Deadline deadline) {
+        return mrXStrat.selectForMrX(board, deadline);
+    }
+
+    @Override
+    public Move selectForDetective(Board board, Deadline deadline) {
+        PSO pso = new PSO(new SimulationGameState(board), c1, c2, w);
+        return pso.chooseMove(swarmEpochs, deadline);
+    }
 }
@@ -1,14 +1,12 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.scoringstrategies;
 
-import uk.ac.bris.cs.scotlandyard.model.Player;
 import uk.ac.bris.cs.scotlandyard.ui.ai.ScoringStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.AStar;
 import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceStrategy;
 import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompactGameState;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
-import java.util.List;
-
 import static uk.ac.bris.cs.scotlandyard.ui.ai.minimax.archive.MinimaxStrategy.isMrXTurn;
 
 /**
@@ -45,9 +43,10 @@ public class FastScorer implements ScoringStrategy {
 
         //System.out.println("Correct MrX Location: " + mrXLoc);
 
-        List<Integer> detectiveLoc = simGameState.getDetectives().stream().map(Player::location).toList();
-        for (int l : detectiveLoc) {
-            sum += distanceStrategy.findDistance(mrXLoc, l, simGameState);
+        // Read the detective locations straight from the compact state to avoid building Player objects
+        CompactGameState state = simGameState.getCompactState();
+        for (int i = 1; i < state.numPieces(); i++) {
+            sum += distanceStrategy.findDistance(mrXLoc, state.location(i), simGameState);
         }
 
         return (sum);
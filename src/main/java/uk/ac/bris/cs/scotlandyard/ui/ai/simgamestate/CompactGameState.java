@@ -0,0 +1,817 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
+
+/**
+ * This class implements the packed representation of a game state that sits underneath {@link SimulationGameState}.
+ * Rather than rebuilding {@link Player} records and copying collections on every move, the positions and tickets of
+ * every piece are stored in primitive arrays, the remaining players are stored as a bitmask and Mr X's log is stored
+ * as packed integers. {@link #advance(Move)} updates the arrays in place and does not allocate.
+ *
+ * Pieces are addressed by index: index 0 is always Mr X, and indices 1 to n are the detectives in the order they
+ * were given in.
+ *
+ * Every state also carries a 64-bit Zobrist key covering the locations and tickets of every piece, the remaining
+ * players (and so the side to move), the round of Mr X's log and his last revealed location. The key is updated
+ * alongside the arrays, so two states reached through different move orders have the same key without either being
+ * rehashed.
+ */
+public final class CompactGameState {
+    static final ScotlandYard.Ticket[] TICKETS = ScotlandYard.Ticket.values();
+    static final int NUM_TICKETS = TICKETS.length;
+    static final int MRX = 0;
+
+    private static final int DOUBLE = ScotlandYard.Ticket.DOUBLE.ordinal();
+    private static final int SECRET = ScotlandYard.Ticket.SECRET.ordinal();
+
+    // The kinds of feature that make up the Zobrist key, see zobrist
+    private static final int LOCATION_KEY = 1;
+    private static final int TICKET_KEY = 2;
+    private static final int REMAINING_KEY = 3;
+    private static final int ROUND_KEY = 4;
+    private static final int REVEALED_KEY = 5;
+
+    private final GameSetup setup;
+    private final CompiledGraph graph;
+    private final MoveTable moveTable;
+    private final Piece[] pieces; // shared between copies as it never changes
+    private final int[] pieceCodes; // the number of each piece in the move table, shared like pieces
+    private final int[] locations;
+    private final byte[] tickets; // NUM_TICKETS entries per piece, indexed by ticket ordinal
+    private final int[] log; // packed log entries, see packLogEntry
+    private int logSize;
+    private int remaining; // bit i is set if pieces[i] still has to move this round
+    private int detectiveTickets; // the total of the detectives' tickets, kept up to date as they are used
+    private final ImmutableSet<Piece> mrXWins; // the winners of a finished game, shared between copies
+    private final ImmutableSet<Piece> detectivesWin;
+    private int[] history; // undo frames pushed by apply, see pushUndoFrame
+    private int historySize;
+    private long zobristKey;
+
+    /**
+     * This creates a compact game state from the players in the game.
+     * @param setup The game setup
+     * @param mrX Mr X
+     * @param detectives The detectives in the game
+     * @param remaining The pieces that still have to move this round
+     * @param mrXLog Mr X's logbook
+     */
+    public CompactGameState(GameSetup setup, Player mrX, List<Player> detectives, Set<Piece> remaining,
+                            List<LogEntry> mrXLog) {
+        this.setup = setup;
+        this.graph = CompiledGraph.of(setup);
+        this.moveTable = MoveTable.of(graph);
+        this.pieces = new Piece[detectives.size() + 1];
+        this.pieceCodes = new int[pieces.length];
+        this.locations = new int[pieces.length];
+        this.tickets = new byte[pieces.length * NUM_TICKETS];
+        this.log = new int[setup.moves.size()];
+
+        for (int i = 0; i < pieces.length; i++) {
+            Player player = (i == MRX) ? mrX : detectives.get(i - 1);
+            pieces[i] = player.piece();
+            pieceCodes[i] = MoveTable.pieceCode(player.piece());
+            locations[i] = player.location();
+            for (ScotlandYard.Ticket ticket : TICKETS) {
+                tickets[i * NUM_TICKETS + ticket.ordinal()] = (byte) (int) player.tickets().getOrDefault(ticket, 0);
+            }
+            if (remaining.contains(player.piece())) {
+                this.remaining |= 1 << i;
+            }
+        }
+
+        for (LogEntry entry : mrXLog) {
+            log[logSize++] = packLogEntry(entry.ticket(), entry.location().orElse(0));
+        }
+
+        for (int i = 1; i < pieces.length; i++) {
+            detectiveTickets += totalTickets(i);
+        }
+        this.mrXWins = ImmutableSet.of(pieces[MRX]);
+        this.detectivesWin = ImmutableSet.copyOf(Arrays.asList(pieces).subList(1, pieces.length));
+        this.zobristKey = computeZobristKey();
+    }
+
+    /**
+     * Copy constructor; the piece table and the setup are shared, everything else is cloned.
+     * @param other The state to copy
+     */
+    private CompactGameState(CompactGameState other) {
+        this.setup = other.setup;
+        this.graph = other.graph;
+        this.moveTable = other.moveTable;
+        this.pieces = other.pieces;
+        this.pieceCodes = other.pieceCodes;
+        this.locations = other.locations.clone();
+        this.tickets = other.tickets.clone();
+        this.log = other.log.clone();
+        this.logSize = other.logSize;
+        this.remaining = other.remaining;
+        this.detectiveTickets = other.detectiveTickets;
+        this.mrXWins = other.mrXWins;
+        this.detectivesWin = other.detectivesWin;
+        this.zobristKey = other.zobristKey;
+    }
+
+    /**
+     * This function creates an independent copy of the state. The copy starts with no moves to undo.
+     * @return The copy
+     */
+    public CompactGameState copy() {
+        return new CompactGameState(this);
+    }
+
+    private static final int UNDO_FRAME_SIZE = 6;
+    private static final int NO_TICKET = 0xF;
+
+    /**
+     * This function advances the state in place like {@link #advance(Move)}, but remembers enough to restore it
+     * exactly with {@link #undo()}.
+     * @param move The move, which is assumed to be legal
+     */
+    public void apply(Move move) {
+        int movedBy = indexOf(move.commencedBy());
+        int usedTickets;
+        if (move instanceof Move.SingleMove single) {
+            usedTickets = single.ticket.ordinal() | NO_TICKET << 4 | NO_TICKET << 8;
+        } else {
+            Move.DoubleMove doubleMove = (Move.DoubleMove) move;
+            usedTickets = doubleMove.ticket1.ordinal() | doubleMove.ticket2.ordinal() << 4 | DOUBLE << 8;
+        }
+        pushUndoFrame(movedBy, usedTickets);
+        advance(move);
+    }
+
+    // A frame holds the piece that moved and the log size before the move, its previous location, the previous
+    // remaining mask, the ordinals of the tickets used packed 4 bits each, and the previous Zobrist key split in two.
+    private void pushUndoFrame(int movedBy, int usedTickets) {
+        if (history == null) {
+            history = new int[UNDO_FRAME_SIZE * 16];
+        } else if (historySize + UNDO_FRAME_SIZE > history.length) {
+            history = Arrays.copyOf(history, history.length * 2);
+        }
+        history[historySize++] = movedBy | logSize << 8;
+        history[historySize++] = locations[movedBy];
+        history[historySize++] = remaining;
+        history[historySize++] = usedTickets;
+        history[historySize++] = (int) (zobristKey >>> 32);
+        history[historySize++] = (int) zobristKey;
+    }
+
+    /**
+     * This function restores the state to how it was before the last {@link #apply(Move)}.
+     */
+    public void undo() {
+        if (historySize == 0) throw new IllegalStateException("No move to undo");
+
+        int keyLow = history[--historySize];
+        int keyHigh = history[--historySize];
+        zobristKey = (long) keyHigh << 32 | (keyLow & 0xFFFFFFFFL);
+        int usedTickets = history[--historySize];
+        remaining = history[--historySize];
+        int location = history[--historySize];
+        int movedBy = history[--historySize] & 0xFF;
+        logSize = history[historySize] >>> 8;
+
+        locations[movedBy] = location;
+        for (int shift = 0; shift <= 8; shift += 4) {
+            int ticket = (usedTickets >>> shift) & 0xF;
+            if (ticket != NO_TICKET) {
+                tickets[movedBy * NUM_TICKETS + ticket]++;
+                if (movedBy != MRX) {
+                    tickets[MRX * NUM_TICKETS + ticket]--;
+                    detectiveTickets++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether there is a move that can be undone
+     */
+    public boolean canUndo() {
+        return historySize > 0;
+    }
+
+    // Log entries are packed as (location << 3) | ticket ordinal, with location 0 for a hidden entry.
+    private static int packLogEntry(ScotlandYard.Ticket ticket, int location) {
+        return (location << 3) | ticket.ordinal();
+    }
+
+    /**
+     * This function advances the state in place after a particular move is played. The move is assumed to be legal.
+     * @param move The move
+     */
+    public void advance(Move move) {
+        int movedBy = indexOf(move.commencedBy());
+
+        if (move instanceof Move.SingleMove single) {
+            if (movedBy == MRX) {
+                addToLog(single.ticket, single.destination);
+            }
+            useTicket(movedBy, single.ticket.ordinal());
+            moveTo(movedBy, single.destination);
+        } else {
+            Move.DoubleMove doubleMove = (Move.DoubleMove) move;
+            addToLog(doubleMove.ticket1, doubleMove.destination1);
+            addToLog(doubleMove.ticket2, doubleMove.destination2);
+            useTicket(movedBy, doubleMove.ticket1.ordinal());
+            useTicket(movedBy, doubleMove.ticket2.ordinal());
+            useTicket(movedBy, DOUBLE);
+            moveTo(movedBy, doubleMove.destination2);
+        }
+
+        int newRemaining = remaining & ~(1 << movedBy);
+
+        // If any of the players have no remaining tickets, then they can no longer play.
+        for (int i = 0; i < pieces.length; i++) {
+            if ((newRemaining & (1 << i)) != 0 && totalTickets(i) == 0) {
+                newRemaining &= ~(1 << i);
+            }
+        }
+
+        // If there are no remaining players, then we reset the remaining.
+        if (newRemaining == 0) {
+            newRemaining = (movedBy == MRX) ? detectiveMask() : 1 << MRX;
+        }
+
+        zobristKey ^= zobrist(REMAINING_KEY, 0, remaining) ^ zobrist(REMAINING_KEY, 0, newRemaining);
+        remaining = newRemaining;
+    }
+
+    private void addToLog(ScotlandYard.Ticket ticket, int destination) {
+        if (setup.moves.get(logSize)) {
+            zobristKey ^= zobrist(REVEALED_KEY, 0, lastRevealedLocation()) ^ zobrist(REVEALED_KEY, 0, destination);
+        }
+        log[logSize] = packLogEntry(ticket, setup.moves.get(logSize) ? destination : 0);
+        zobristKey ^= zobrist(ROUND_KEY, 0, logSize) ^ zobrist(ROUND_KEY, 0, logSize + 1);
+        logSize++;
+    }
+
+    private void moveTo(int piece, int destination) {
+        zobristKey ^= zobrist(LOCATION_KEY, piece, locations[piece]) ^ zobrist(LOCATION_KEY, piece, destination);
+        locations[piece] = destination;
+    }
+
+    // Uses a ticket; tickets used by a detective are given to Mr X.
+    private void useTicket(int piece, int ticket) {
+        changeTickets(piece, ticket, -1);
+        if (piece != MRX) {
+            changeTickets(MRX, ticket, +1);
+        }
+    }
+
+    private void changeTickets(int piece, int ticket, int change) {
+        int slot = piece * NUM_TICKETS + ticket;
+        zobristKey ^= zobrist(TICKET_KEY, slot, tickets[slot]) ^ zobrist(TICKET_KEY, slot, tickets[slot] + change);
+        tickets[slot] += (byte) change;
+        if (piece != MRX) {
+            detectiveTickets += change;
+        }
+    }
+
+    /**
+     * This function gives the random key for a single feature of a state. Rather than storing a table of random
+     * numbers, which would have to be sized for the graph, the key is a SplitMix64 hash of the feature, which is just
+     * as well distributed and is the same in every game.
+     * @param kind What the feature describes, e.g. {@link #LOCATION_KEY}
+     * @param index Which piece (or ticket slot) the feature belongs to
+     * @param value The value of the feature
+     * @return The key for the feature
+     */
+    private static long zobrist(int kind, int index, int value) {
+        long z = ((long) kind << 56 | (long) index << 32 | (value & 0xFFFFFFFFL)) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * This function computes the Zobrist key of the state from scratch, which {@link #advance(Move)} keeps up to
+     * date incrementally afterwards.
+     * @return The key
+     */
+    long computeZobristKey() {
+        long key = zobrist(REMAINING_KEY, 0, remaining) ^ zobrist(ROUND_KEY, 0, logSize)
+                ^ zobrist(REVEALED_KEY, 0, lastRevealedLocation());
+        for (int i = 0; i < pieces.length; i++) {
+            key ^= zobrist(LOCATION_KEY, i, locations[i]);
+        }
+        for (int slot = 0; slot < tickets.length; slot++) {
+            key ^= zobrist(TICKET_KEY, slot, tickets[slot]);
+        }
+        return key;
+    }
+
+    /**
+     * @return The 64-bit Zobrist key of the state; equal states always have equal keys
+     */
+    public long zobristKey() {
+        return zobristKey;
+    }
+
+    private int detectiveMask() {
+        return ((1 << pieces.length) - 1) & ~(1 << MRX);
+    }
+
+    /**
+     * This function finds the index of a piece
+     * @param piece The piece
+     * @return The index of the piece, or -1 if it is not in the game
+     */
+    public int indexOf(Piece piece) {
+        for (int i = 0; i < pieces.length; i++) {
+            if (pieces[i].equals(piece)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public GameSetup getSetup() {
+        return setup;
+    }
+
+    public CompiledGraph getGraph() {
+        return graph;
+    }
+
+    public int numPieces() {
+        return pieces.length;
+    }
+
+    public Piece piece(int index) {
+        return pieces[index];
+    }
+
+    public int location(int index) {
+        return locations[index];
+    }
+
+    public int mrXLocation() {
+        return locations[MRX];
+    }
+
+    public int ticketCount(int index, ScotlandYard.Ticket ticket) {
+        return tickets[index * NUM_TICKETS + ticket.ordinal()];
+    }
+
+    public int totalTickets(int index) {
+        int sum = 0;
+        for (int t = 0; t < NUM_TICKETS; t++) {
+            sum += tickets[index * NUM_TICKETS + t];
+        }
+        return sum;
+    }
+
+    /**
+     * @return The total number of tickets held by all the detectives
+     */
+    public int detectiveTickets() {
+        return detectiveTickets;
+    }
+
+    /**
+     * @return The winners if Mr X wins, which is the same set every time
+     */
+    public ImmutableSet<Piece> mrXWinner() {
+        return mrXWins;
+    }
+
+    /**
+     * @return The winners if the detectives win, which is the same set every time
+     */
+    public ImmutableSet<Piece> detectivesWinner() {
+        return detectivesWin;
+    }
+
+    public boolean isRemaining(int index) {
+        return (remaining & (1 << index)) != 0;
+    }
+
+    public boolean isMrXRemaining() {
+        return isRemaining(MRX);
+    }
+
+    public boolean hasRemaining() {
+        return remaining != 0;
+    }
+
+    public int logSize() {
+        return logSize;
+    }
+
+    /**
+     * @return Whether Mr X has made the requisite number of moves
+     */
+    public boolean isLogFull() {
+        return logSize == setup.moves.size();
+    }
+
+    public LogEntry logEntry(int index) {
+        ScotlandYard.Ticket ticket = TICKETS[log[index] & 7];
+        int location = log[index] >>> 3;
+        return location == 0 ? LogEntry.hidden(ticket) : LogEntry.reveal(ticket, location);
+    }
+
+    /**
+     * @return Mr X's last revealed location, or -1 if he has not been revealed yet
+     */
+    public int lastRevealedLocation() {
+        for (int entry = logSize - 1; entry >= 0; entry--) {
+            if ((log[entry] >>> 3) != 0) {
+                return log[entry] >>> 3;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param node A node on the graph
+     * @return Whether a detective is standing on the node
+     */
+    public boolean isOccupiedByDetective(int node) {
+        for (int i = 1; i < pieces.length; i++) {
+            if (locations[i] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The index of the first detective standing on Mr X, or -1 if Mr X has not been caught
+     */
+    public int caughtBy() {
+        for (int i = 1; i < pieces.length; i++) {
+            if (locations[i] == locations[MRX]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This function creates a {@link Player} from the packed representation
+     * @param index The index of the piece
+     * @return The player
+     */
+    public Player player(int index) {
+        ImmutableMap.Builder<ScotlandYard.Ticket, Integer> playerTickets = ImmutableMap.builder();
+        for (ScotlandYard.Ticket ticket : TICKETS) {
+            playerTickets.put(ticket, ticketCount(index, ticket));
+        }
+        return new Player(pieces[index], playerTickets.build(), locations[index]);
+    }
+
+    /**
+     * This function generates the moves available in this state. If Mr X is remaining then these are his single and
+     * double moves, otherwise these are the single moves of all the remaining detectives.
+     * @return The available moves
+     */
+    public Set<Move> availableMoves() {
+        ImmutableSet.Builder<Move> moves = ImmutableSet.builder();
+        availableMoves(move -> true).forEachRemaining(moves::add);
+        return moves.build();
+    }
+
+    /**
+     * This function enumerates the available moves one at a time, in the same order as {@link #availableMoves()},
+     * without building a set. Each move is only generated when the iterator reaches it, so a caller that stops early
+     * does not pay for Mr X's double moves. The state must not be changed while the iterator is in use.
+     * @param filter Which of the available moves to return
+     * @return An iterator over the available moves that pass the filter
+     */
+    public Iterator<Move> availableMoves(Predicate<? super Move> filter) {
+        return new MoveIterator(filter);
+    }
+
+    /**
+     * @return Whether any move is available, found by counting single moves without generating any
+     */
+    public boolean hasAvailableMoves() {
+        // Mr X's double moves all start with one of his single moves, so they do not need to be looked at
+        for (int i = 0; i < pieces.length; i++) {
+            if (isRemaining(i) && countLegs(i, locations[i], usableTickets(i, -1)) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function checks whether a move is one of the available moves against the rules, without generating them
+     * @param move The move
+     * @return Whether the move is available
+     */
+    public boolean isAvailable(Move move) {
+        int index = indexOf(move.commencedBy());
+        if (index == -1 || !isRemaining(index) || move.source() != locations[index]) {
+            return false;
+        }
+
+        if (move instanceof Move.SingleMove single) {
+            return isLegalLeg(index, single.source(), single.ticket.ordinal(), single.destination, -1);
+        }
+        Move.DoubleMove doubleMove = (Move.DoubleMove) move;
+        return index == MRX && canDoubleMove()
+                && isLegalLeg(MRX, doubleMove.source(), doubleMove.ticket1.ordinal(), doubleMove.destination1, -1)
+                && isLegalLeg(MRX, doubleMove.destination1, doubleMove.ticket2.ordinal(), doubleMove.destination2,
+                        doubleMove.ticket1.ordinal());
+    }
+
+    /**
+     * @return The number of available moves, counted without generating any of them
+     */
+    public int countAvailableMoves() {
+        if (!isMrXRemaining()) {
+            int count = 0;
+            for (int i = 1; i < pieces.length; i++) {
+                if (isRemaining(i)) {
+                    count += countLegs(i, locations[i], usableTickets(i, -1));
+                }
+            }
+            return count;
+        }
+
+        int source = locations[MRX];
+        int usable = usableTickets(MRX, -1);
+        int count = countLegs(MRX, source, usable);
+        if (canDoubleMove()) {
+            for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+                int middle = graph.neighbour(edge);
+                if (isOccupiedByDetective(middle)) {
+                    continue;
+                }
+                for (int firsts = edgeTickets(MRX, edge) & usable; firsts != 0; firsts &= firsts - 1) {
+                    count += countLegs(MRX, middle, afterSpending(usable, Integer.numberOfTrailingZeros(firsts)));
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This function picks one of the available moves uniformly at random. The moves are counted, and only the move
+     * that is picked is generated, so no set or list of moves is built.
+     * @param random The random number generator to use
+     * @return The move, or null if there are no moves
+     */
+    public Move randomMove(RandomGenerator random) {
+        int count = countAvailableMoves();
+        return count == 0 ? null : moveAt(random.nextInt(count));
+    }
+
+    /**
+     * This function finds the move at a position in the order that {@link #availableMoves(Predicate)} generates
+     * them, by skipping over whole edges and pieces using their counts.
+     * @param position The position of the move, from 0 to {@link #countAvailableMoves()} - 1
+     * @return The move
+     */
+    public Move moveAt(int position) {
+        if (position < 0) throw new IndexOutOfBoundsException("No available move at position " + position);
+        int left = position;
+
+        if (!isMrXRemaining()) {
+            for (int i = 1; i < pieces.length; i++) {
+                if (isRemaining(i)) {
+                    int usable = usableTickets(i, -1);
+                    int count = countLegs(i, locations[i], usable);
+                    if (left < count) {
+                        int leg = legAt(i, locations[i], usable, left);
+                        return moveTable.singleMove(pieceCodes[i], leg >>> 3, leg & 7);
+                    }
+                    left -= count;
+                }
+            }
+            throw new IndexOutOfBoundsException("No available move at position " + position);
+        }
+
+        int source = locations[MRX];
+        int usable = usableTickets(MRX, -1);
+        int singles = countLegs(MRX, source, usable);
+        if (left < singles) {
+            int leg = legAt(MRX, source, usable, left);
+            return moveTable.singleMove(pieceCodes[MRX], leg >>> 3, leg & 7);
+        }
+        left -= singles;
+
+        if (canDoubleMove()) {
+            for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+                int middle = graph.neighbour(edge);
+                if (isOccupiedByDetective(middle)) {
+                    continue;
+                }
+                for (int firsts = edgeTickets(MRX, edge) & usable; firsts != 0; firsts &= firsts - 1) {
+                    int firstTicket = Integer.numberOfTrailingZeros(firsts);
+                    int secondUsable = afterSpending(usable, firstTicket);
+                    int count = countLegs(MRX, middle, secondUsable);
+                    if (left < count) {
+                        int leg = legAt(MRX, middle, secondUsable, left);
+                        return moveTable.doubleMove(edge, firstTicket, leg >>> 3, leg & 7);
+                    }
+                    left -= count;
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException("No available move at position " + position);
+    }
+
+    // The number of single moves a piece can make from a node with the tickets in usable
+    private int countLegs(int index, int source, int usable) {
+        int count = 0;
+        for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+            if (!isOccupiedByDetective(graph.neighbour(edge))) {
+                count += Integer.bitCount(edgeTickets(index, edge) & usable);
+            }
+        }
+        return count;
+    }
+
+    // The single move at a position among those counted by countLegs, packed as (edge << 3) | ticket ordinal
+    private int legAt(int index, int source, int usable, int position) {
+        int left = position;
+        for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+            int destination = graph.neighbour(edge);
+            if (isOccupiedByDetective(destination)) {
+                continue;
+            }
+            int edgeTickets = edgeTickets(index, edge) & usable;
+            int count = Integer.bitCount(edgeTickets);
+            if (left < count) {
+                for (int i = 0; i < left; i++) {
+                    edgeTickets &= edgeTickets - 1;
+                }
+                return edge << 3 | Integer.numberOfTrailingZeros(edgeTickets);
+            }
+            left -= count;
+        }
+        throw new IndexOutOfBoundsException("No leg at position " + position);
+    }
+
+    // The tickets Mr X can still use for the second move of a double move after using ticket for the first
+    private int afterSpending(int usable, int ticket) {
+        return tickets[MRX * NUM_TICKETS + ticket] > 1 ? usable : usable & ~(1 << ticket);
+    }
+
+    // Mr X can only double move if there is space left in his log for both moves.
+    private boolean canDoubleMove() {
+        return tickets[MRX * NUM_TICKETS + DOUBLE] > 0
+                && totalTickets(MRX) >= 2
+                && logSize + 2 <= setup.moves.size();
+    }
+
+    // The tickets that a piece can use along an edge; Mr X can use a secret ticket along any of them.
+    private int edgeTickets(int index, int edge) {
+        return index == MRX ? graph.tickets(edge) | 1 << SECRET : graph.tickets(edge);
+    }
+
+    // The tickets a piece has at least one of, not counting one of the ticket spent on the first move of a double move
+    private int usableTickets(int index, int spent) {
+        int usable = 0;
+        for (int ticket = 0; ticket < NUM_TICKETS; ticket++) {
+            if (tickets[index * NUM_TICKETS + ticket] > (ticket == spent ? 1 : 0)) {
+                usable |= 1 << ticket;
+            }
+        }
+        return usable;
+    }
+
+    // Whether a piece can go from source to destination with a ticket, see usableTickets for spent
+    private boolean isLegalLeg(int index, int source, int ticket, int destination, int spent) {
+        if ((usableTickets(index, spent) & (1 << ticket)) == 0 || isOccupiedByDetective(destination)) {
+            return false;
+        }
+        for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+            if (graph.neighbour(edge) == destination) {
+                return (edgeTickets(index, edge) & (1 << ticket)) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This class walks the single moves that one piece can make from a node: one for every edge that does not lead
+     * onto a detective and every ticket the piece can use along it.
+     */
+    private final class Legs {
+        private int index;
+        private int edge;
+        private int end;
+        private int usable;
+        private int ticketsLeft; // the tickets along the current edge that have not been returned yet
+        int destination;
+        int ticket;
+
+        // Starts again from source; see usableTickets for spent
+        void reset(int index, int source, int spent) {
+            this.index = index;
+            this.edge = graph.start(source) - 1;
+            this.end = graph.end(source);
+            this.usable = usableTickets(index, spent);
+            this.ticketsLeft = 0;
+        }
+
+        // Moves on to the next leg, or returns false if there are none left
+        boolean next() {
+            while (ticketsLeft == 0) {
+                if (++edge >= end) {
+                    return false;
+                }
+                destination = graph.neighbour(edge);
+                // if the location is occupied by a detective, the move is not possible
+                if (!isOccupiedByDetective(destination)) {
+                    ticketsLeft = edgeTickets(index, edge) & usable;
+                }
+            }
+            ticket = Integer.numberOfTrailingZeros(ticketsLeft);
+            ticketsLeft &= ticketsLeft - 1;
+            return true;
+        }
+    }
+
+    /**
+     * This class generates the available moves lazily. Mr X's single moves are followed by his double moves, which
+     * extend each single move with a second leg; when the detectives are remaining their single moves are generated
+     * one detective after another. The moves are the canonical ones from the {@link MoveTable}, so none are allocated.
+     */
+    private final class MoveIterator implements Iterator<Move> {
+        private final Predicate<? super Move> filter;
+        private final Legs first = new Legs();
+        private final Legs second = new Legs(); // only used for Mr X's double moves
+        private int index; // the piece whose moves are being generated, or pieces.length once there are none left
+        private boolean doubleMoves;
+        private Move next;
+
+        MoveIterator(Predicate<? super Move> filter) {
+            this.filter = filter;
+            this.index = isMrXRemaining() ? MRX : nextRemainingDetective(MRX);
+            if (index < pieces.length) {
+                first.reset(index, locations[index], -1);
+            }
+        }
+
+        private int nextRemainingDetective(int after) {
+            int i = after + 1;
+            while (i < pieces.length && !isRemaining(i)) {
+                i++;
+            }
+            return i;
+        }
+
+        // Generates the next move whether or not it passes the filter, or returns null if there are none left
+        private Move generate() {
+            while (index < pieces.length) {
+                if (doubleMoves) {
+                    if (second.next()) {
+                        return moveTable.doubleMove(first.edge, first.ticket, second.edge, second.ticket);
+                    }
+                    if (first.next()) {
+                        second.reset(MRX, first.destination, first.ticket);
+                    } else {
+                        index = pieces.length;
+                    }
+                } else if (first.next()) {
+                    return moveTable.singleMove(pieceCodes[index], first.edge, first.ticket);
+                } else if (index == MRX && canDoubleMove()) {
+                    doubleMoves = true;
+                    first.reset(MRX, locations[MRX], -1);
+                } else {
+                    index = (index == MRX) ? pieces.length : nextRemainingDetective(index);
+                    if (index < pieces.length) {
+                        first.reset(index, locations[index], -1);
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                Move move = generate();
+                if (move == null) {
+                    return false;
+                }
+                if (filter.test(move)) {
+                    next = move;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Move next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Move move = next;
+            next = null;
+            return move;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * This class implements a compiled, read-only version of the game graph in compressed sparse row form. The
+ * neighbours of node n are stored in {@code neighbours[start(n)]} to {@code neighbours[end(n) - 1]}, and every edge
+ * carries a bitmask of the transports (and the tickets) that can be used along it. Lookups are plain array reads, so
+ * the innermost loops of move generation and the distance strategies avoid Guava's hash lookups and boxed integers.
+ *
+ * A compiled graph is immutable and can be shared between threads. Use {@link #of(GameSetup)} to get the one for a
+ * setup; it is only built once, see {@link GraphCache}.
+ */
+public final class CompiledGraph {
+
+    private static final GraphCache<ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>>, CompiledGraph>
+            cache = new GraphCache<>(CompiledGraph::new);
+
+    private final int maxNode;
+    private final int[] offsets;
+    private final int[] neighbours;
+    private final byte[] transports; // bit t is set if Transport with ordinal t runs along the edge
+    private final byte[] tickets; // bit t is set if Ticket with ordinal t can be used along the edge
+
+    /**
+     * This function gets the compiled graph for a setup, compiling it the first time it is asked for.
+     * @param setup The game setup
+     * @return The compiled graph
+     */
+    public static CompiledGraph of(GameSetup setup) {
+        return of(setup.graph);
+    }
+
+    /**
+     * This function gets the compiled version of a graph, compiling it the first time it is asked for.
+     * @param graph The game graph
+     * @return The compiled graph
+     */
+    public static CompiledGraph of(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph) {
+        return cache.get(graph);
+    }
+
+    private CompiledGraph(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph) {
+        this.maxNode = graph.nodes().stream().mapToInt(Integer::intValue).max().orElse(0);
+        this.offsets = new int[maxNode + 2];
+
+        int numEdges = 0;
+        for (int node = 0; node <= maxNode; node++) {
+            offsets[node] = numEdges;
+            if (graph.nodes().contains(node)) {
+                numEdges += graph.adjacentNodes(node).size();
+            }
+        }
+        offsets[maxNode + 1] = numEdges;
+
+        this.neighbours = new int[numEdges];
+        this.transports = new byte[numEdges];
+        this.tickets = new byte[numEdges];
+
+        for (int node : graph.nodes()) {
+            int edge = offsets[node];
+            for (int neighbour : graph.adjacentNodes(node)) {
+                neighbours[edge] = neighbour;
+                for (ScotlandYard.Transport t : graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of())) {
+                    transports[edge] |= (byte) (1 << t.ordinal());
+                    tickets[edge] |= (byte) (1 << t.requiredTicket().ordinal());
+                }
+                edge++;
+            }
+        }
+    }
+
+    /**
+     * @return The largest node number in the graph; arrays indexed by node should have one more entry than this
+     */
+    public int maxNode() {
+        return maxNode;
+    }
+
+    /**
+     * @param node A node
+     * @return The index of the first edge out of the node
+     */
+    public int start(int node) {
+        return offsets[node];
+    }
+
+    /**
+     * @param node A node
+     * @return One past the index of the last edge out of the node
+     */
+    public int end(int node) {
+        return offsets[node + 1];
+    }
+
+    /**
+     * @param edge The index of an edge
+     * @return The node at the other end of the edge
+     */
+    public int neighbour(int edge) {
+        return neighbours[edge];
+    }
+
+    /**
+     * @param edge The index of an edge
+     * @return The bitmask of {@link ScotlandYard.Transport} ordinals that run along the edge
+     */
+    public int transports(int edge) {
+        return transports[edge];
+    }
+
+    /**
+     * @param edge The index of an edge
+     * @return The number of different transports that run along the edge
+     */
+    public int transportCount(int edge) {
+        return Integer.bitCount(transports[edge]);
+    }
+
+    /**
+     * @param edge The index of an edge
+     * @return The bitmask of {@link ScotlandYard.Ticket} ordinals that can be used along the edge
+     */
+    public int tickets(int edge) {
+        return tickets[edge];
+    }
+}
@@ -0,0 +1,48 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate;
+
+import java.util.function.Function;
+
+/**
+ * This class caches a value that is built from a graph, such as a {@link CompiledGraph} or a {@link MoveTable}, so
+ * that it is only built once however many game states ask for it.
+ *
+ * Every game is played on a single graph, so only the value for the latest graph is kept, and asking for another
+ * graph replaces it. Graphs are compared by identity rather than equality, as they are immutable and comparing two
+ * whole graphs would cost more than the lookup saves. Getting the cached value is a single volatile read, and values
+ * are built while holding a lock, so threads that ask for a new graph at the same time only build it once.
+ * @param <G> The type of the graph
+ * @param <V> The type of the value
+ */
+public final class GraphCache<G, V> {
+
+    private record Entry<G, V>(G graph, V value) {}
+
+    private final Function<G, V> builder;
+    private volatile Entry<G, V> latest;
+
+    /**
+     * @param builder The function that builds the value for a graph
+     */
+    public GraphCache(Function<G, V> builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * This function gets the value for a graph, building it if the cached value is for a different graph.
+     * @param graph The graph
+     * @return The value
+     */
+    public V get(G graph) {
+        Entry<G, V> entry = latest;
+        if (entry == null || entry.graph != graph) {
+            synchronized (this) {
+                entry = latest;
+                if (entry == null || entry.graph != graph) {
+                    entry = new Entry<>(graph, builder.apply(graph));
+                    latest = entry;
+                }
+            }
+        }
+        return entry.value;
+    }
+}
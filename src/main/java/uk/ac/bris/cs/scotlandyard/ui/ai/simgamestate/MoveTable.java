@@ -0,0 +1,218 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a table of canonical moves for a graph. Every single move that a piece can make along an edge
+ * with a ticket, and every double move that Mr X can make out of two of them, is created once when the table is
+ * built. Move generation hands out these instances instead of allocating new moves for every state.
+ *
+ * Each move also has a 32-bit code, so that moves can be kept in primitive arrays and only turned back into a
+ * {@link Move} where one is needed. From the most significant bit, a code holds:
+ * <ul>
+ *     <li>1 bit: whether it is a double move</li>
+ *     <li>3 bits: the piece, 0 for Mr X and 1 to 5 for the detectives in the order of {@link Piece.Detective}</li>
+ *     <li>8 bits: the source</li>
+ *     <li>2 + 8 bits: the ticket and destination of the first move</li>
+ *     <li>2 + 8 bits: the ticket and destination of the second move, or 0 for a single move</li>
+ * </ul>
+ * Tickets are numbered 0 to 3 for taxi, bus, underground and secret. Codes only depend on the pieces and the nodes, so
+ * a move has the same code in every game on the graph.
+ *
+ * A move table is immutable and can be shared between threads. Use {@link #of(CompiledGraph)} to get the one for a
+ * graph; it is only built once, see {@link GraphCache}.
+ */
+public final class MoveTable {
+
+    private static final GraphCache<CompiledGraph, MoveTable> cache = new GraphCache<>(MoveTable::new);
+
+    private static final int NUM_PIECES = 1 + Piece.Detective.values().length;
+    private static final ScotlandYard.Ticket[] LEG_TICKETS = {
+            ScotlandYard.Ticket.TAXI, ScotlandYard.Ticket.BUS, ScotlandYard.Ticket.UNDERGROUND, ScotlandYard.Ticket.SECRET
+    };
+    private static final int NUM_LEG_TICKETS = LEG_TICKETS.length;
+    private static final int SECRET = ScotlandYard.Ticket.SECRET.ordinal();
+    private static final int MAX_NODE = 0xFF;
+
+    private final CompiledGraph graph;
+    private final int[] legTicket; // the leg ticket number of each ticket ordinal, or -1 for the double ticket
+    private final Move.SingleMove[] singles; // indexed by (piece * edges + edge) * NUM_LEG_TICKETS + leg ticket
+    private final Move.DoubleMove[] doubles; // Mr X's, see doubleIndex
+    private final int[] doubleOffsets; // where the double moves starting with each of Mr X's legs begin in doubles
+
+    /**
+     * This function gets the move table for a graph, building it the first time it is asked for.
+     * @param graph The compiled graph
+     * @return The move table
+     */
+    public static MoveTable of(CompiledGraph graph) {
+        return cache.get(graph);
+    }
+
+    private MoveTable(CompiledGraph graph) {
+        if (graph.maxNode() > MAX_NODE) {
+            throw new IllegalArgumentException("Too many nodes for move codes: " + graph.maxNode());
+        }
+        this.graph = graph;
+        this.legTicket = new int[CompactGameState.NUM_TICKETS];
+        Arrays.fill(legTicket, -1);
+        for (int i = 0; i < NUM_LEG_TICKETS; i++) {
+            legTicket[LEG_TICKETS[i].ordinal()] = i;
+        }
+
+        int numEdges = graph.end(graph.maxNode());
+        this.singles = new Move.SingleMove[NUM_PIECES * numEdges * NUM_LEG_TICKETS];
+        for (int piece = 0; piece < NUM_PIECES; piece++) {
+            for (int node = 0; node <= graph.maxNode(); node++) {
+                for (int edge = graph.start(node); edge < graph.end(node); edge++) {
+                    for (int tickets = legTickets(piece, edge); tickets != 0; tickets &= tickets - 1) {
+                        int ticket = Integer.numberOfTrailingZeros(tickets);
+                        singles[singleIndex(piece, edge, ticket)] = new Move.SingleMove(piece(piece), node,
+                                CompactGameState.TICKETS[ticket], graph.neighbour(edge));
+                    }
+                }
+            }
+        }
+
+        // The double moves starting with a leg along an edge have room for every leg out of the edge's far end
+        this.doubleOffsets = new int[numEdges * NUM_LEG_TICKETS + 1];
+        for (int edge = 0; edge < numEdges; edge++) {
+            int middle = graph.neighbour(edge);
+            for (int i = 0; i < NUM_LEG_TICKETS; i++) {
+                int first = edge * NUM_LEG_TICKETS + i;
+                doubleOffsets[first + 1] = doubleOffsets[first]
+                        + (graph.end(middle) - graph.start(middle)) * NUM_LEG_TICKETS;
+            }
+        }
+        this.doubles = new Move.DoubleMove[doubleOffsets[numEdges * NUM_LEG_TICKETS]];
+        for (int node = 0; node <= graph.maxNode(); node++) {
+            for (int edge1 = graph.start(node); edge1 < graph.end(node); edge1++) {
+                int middle = graph.neighbour(edge1);
+                for (int tickets1 = legTickets(0, edge1); tickets1 != 0; tickets1 &= tickets1 - 1) {
+                    int ticket1 = Integer.numberOfTrailingZeros(tickets1);
+                    for (int edge2 = graph.start(middle); edge2 < graph.end(middle); edge2++) {
+                        for (int tickets2 = legTickets(0, edge2); tickets2 != 0; tickets2 &= tickets2 - 1) {
+                            int ticket2 = Integer.numberOfTrailingZeros(tickets2);
+                            doubles[doubleIndex(edge1, ticket1, edge2, ticket2)] = new Move.DoubleMove(piece(0), node,
+                                    CompactGameState.TICKETS[ticket1], middle,
+                                    CompactGameState.TICKETS[ticket2], graph.neighbour(edge2));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // The tickets that can be used along an edge; Mr X can use a secret ticket along any of them
+    private int legTickets(int piece, int edge) {
+        return piece == 0 ? graph.tickets(edge) | 1 << SECRET : graph.tickets(edge);
+    }
+
+    private int singleIndex(int piece, int edge, int ticket) {
+        return (piece * graph.end(graph.maxNode()) + edge) * NUM_LEG_TICKETS + legTicket[ticket];
+    }
+
+    private int doubleIndex(int edge1, int ticket1, int edge2, int ticket2) {
+        int middle = graph.neighbour(edge1);
+        return doubleOffsets[edge1 * NUM_LEG_TICKETS + legTicket[ticket1]]
+                + (edge2 - graph.start(middle)) * NUM_LEG_TICKETS + legTicket[ticket2];
+    }
+
+    /**
+     * This function gets the number that a piece has in move codes
+     * @param piece The piece
+     * @return 0 for Mr X, or 1 to 5 for the detectives
+     */
+    public static int pieceCode(Piece piece) {
+        return piece.isMrX() ? 0 : ((Piece.Detective) piece).ordinal() + 1;
+    }
+
+    private static Piece piece(int pieceCode) {
+        return pieceCode == 0 ? Piece.MrX.MRX : Piece.Detective.values()[pieceCode - 1];
+    }
+
+    /**
+     * This function gets the canonical single move along an edge
+     * @param pieceCode The piece making the move, see {@link #pieceCode(Piece)}
+     * @param edge The index of the edge in the compiled graph
+     * @param ticket The ordinal of the ticket used
+     * @return The move
+     */
+    Move.SingleMove singleMove(int pieceCode, int edge, int ticket) {
+        return singles[singleIndex(pieceCode, edge, ticket)];
+    }
+
+    /**
+     * This function gets Mr X's canonical double move along two edges, the second starting where the first ends
+     * @param edge1 The index of the first edge in the compiled graph
+     * @param ticket1 The ordinal of the ticket used for the first move
+     * @param edge2 The index of the second edge in the compiled graph
+     * @param ticket2 The ordinal of the ticket used for the second move
+     * @return The move
+     */
+    Move.DoubleMove doubleMove(int edge1, int ticket1, int edge2, int ticket2) {
+        return doubles[doubleIndex(edge1, ticket1, edge2, ticket2)];
+    }
+
+    /**
+     * This function gets the code of a move
+     * @param move The move, which must be along edges of the graph
+     * @return The code
+     */
+    public int encode(Move move) {
+        int code = pieceCode(move.commencedBy()) << 28 | move.source() << 20;
+        if (move instanceof Move.SingleMove single) {
+            return code | leg(single.ticket, single.destination) << 10;
+        }
+        Move.DoubleMove doubleMove = (Move.DoubleMove) move;
+        return 1 << 31 | code | leg(doubleMove.ticket1, doubleMove.destination1) << 10
+                | leg(doubleMove.ticket2, doubleMove.destination2);
+    }
+
+    private int leg(ScotlandYard.Ticket ticket, int destination) {
+        int legTicket = this.legTicket[ticket.ordinal()];
+        if (legTicket == -1 || destination < 0 || destination > MAX_NODE) {
+            throw new IllegalArgumentException("Not a move along an edge: " + ticket + " to " + destination);
+        }
+        return legTicket << 8 | destination;
+    }
+
+    /**
+     * This function gets the canonical move with a code
+     * @param code The code of the move, see {@link #encode(Move)}
+     * @return The move
+     */
+    public Move decode(int code) {
+        int pieceCode = (code >>> 28) & 7;
+        int source = (code >>> 20) & MAX_NODE;
+        int ticket1 = LEG_TICKETS[(code >>> 18) & 3].ordinal();
+        int edge1 = edge(source, (code >>> 10) & MAX_NODE);
+        Move move;
+        if (code >= 0 && pieceCode < NUM_PIECES) {
+            move = singleMove(pieceCode, edge1, ticket1);
+        } else if (code < 0 && pieceCode == 0) {
+            int ticket2 = LEG_TICKETS[(code >>> 8) & 3].ordinal();
+            move = doubleMove(edge1, ticket1, edge(graph.neighbour(edge1), code & MAX_NODE), ticket2);
+        } else {
+            move = null;
+        }
+        if (move == null) throw new IllegalArgumentException("No move with code " + code);
+        return move;
+    }
+
+    // The index of the edge from source to destination
+    private int edge(int source, int destination) {
+        if (source <= graph.maxNode()) {
+            for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+                if (graph.neighbour(edge) == destination) {
+                    return edge;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No edge from " + source + " to " + destination);
+    }
+}
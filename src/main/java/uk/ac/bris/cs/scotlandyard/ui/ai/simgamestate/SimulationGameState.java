@@ -7,6 +7,8 @@ import io.atlassian.fugue.Pair;
 import uk.ac.bris.cs.scotlandyard.model.*;
 
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
 import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.*;
@@ -15,33 +17,70 @@ import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFun
  * This function implements an internal GameState with various utility functions used throughout the AI.
  */
 public class SimulationGameState {
-    GameSetup setup;
-
     public boolean previousTurnWasMrX = false; // if this is true, then this is a state where Mr X is making moves and scoring
                     // Here, we must use getMrX().location().
+
+    CompactGameState state;
+    Set<Move> avlMoves; // only built when asked for, see getAvailableMoves; advance clears it
+    Set<Piece> winner; // null until getWinner works it out; advance clears it
+    Board initBoard;
+
+    // Views of the compact state that are only built when asked for; advance clears them.
+    private Player mrXView;
+    private List<Player> detectivesView;
+
     public Set<Player> getRemaining() {
+        Set<Player> remaining = new HashSet<>();
+        for (int i = 0; i < state.numPieces(); i++) {
+            if (state.isRemaining(i)) {
+                remaining.add(i == CompactGameState.MRX ? getMrX() : getDetectives().get(i - 1));
+            }
+        }
         return remaining;
     }
 
-    Set<Player> remaining;
-    List<LogEntry> mrXLog;
-
     public Player getMrX() {
-        return mrX;
+        if (mrXView == null) {
+            mrXView = state.player(CompactGameState.MRX);
+        }
+        return mrXView;
     }
 
-    public Player mrX;
-
     public List<Player> getDetectives() {
-        return detectives;
+        if (detectivesView == null) {
+            List<Player> detectives = new ArrayList<>(state.numPieces() - 1);
+            for (int i = 1; i < state.numPieces(); i++) {
+                detectives.add(state.player(i));
+            }
+            detectivesView = List.copyOf(detectives); // immutable, so threads reading a shared state can use it
+        }
+        return detectivesView;
     }
 
-    public List<LogEntry> getMrXLog() {return mrXLog; }
+    public List<LogEntry> getMrXLog() {
+        List<LogEntry> mrXLog = new ArrayList<>(state.logSize());
+        for (int i = 0; i < state.logSize(); i++) {
+            mrXLog.add(state.logEntry(i));
+        }
+        return mrXLog;
+    }
 
-    List<Player> detectives;
-    Set<Move> avlMoves;
-    Set<Piece> winner;
-    Board initBoard;
+    /**
+     * @return The packed state underlying this game state
+     */
+    public CompactGameState getCompactState() {
+        return state;
+    }
+
+    /**
+     * This function gets a 64-bit key identifying the position, which is the same however the position was reached.
+     * It is kept up to date on every move, so it is cheap to use as a key for caches and transposition tables.
+     * As scoring depends on {@link #previousTurnWasMrX}, that is part of the key too.
+     * @return The Zobrist key of the position
+     */
+    public long getZobristKey() {
+        return previousTurnWasMrX ? ~state.zobristKey() : state.zobristKey();
+    }
 
     /**
      * This creates a Simulation game state using a Board, such as what we would have when we are asked
@@ -68,9 +107,7 @@ public class SimulationGameState {
 
         //extract information from the board
         avlMoves = new HashSet<>(board.getAvailableMoves());
-        mrXLog = new ArrayList<>(board.getMrXTravelLog());
-        setup = board.getSetup();
-        winner = new HashSet<>();
+        List<LogEntry> mrXLog = board.getMrXTravelLog();
         initBoard = board;
 
         //initialize the information of the detectives and mrX depending on whose turn it is
@@ -79,7 +116,7 @@ public class SimulationGameState {
         int mrXPos = -1;
 
         if (mrXTurn) {
-            for (Move avlMove : List.copyOf(avlMoves)) {
+            for (Move avlMove : avlMoves) {
                 if (avlMove.commencedBy().isMrX()) {
                     mrXPos =  avlMove.source();
                     break;
@@ -94,12 +131,11 @@ public class SimulationGameState {
             }
         }
 
-        detectives = new ArrayList<>();
-        remaining = new HashSet<>();
+        List<Player> detectives = new ArrayList<>();
+        Player mrX = null;
 
         Set<Piece> remainingPieces = avlMoves.stream().map(Move::commencedBy).collect(Collectors.toSet());
 
-
         for (Piece p : board.getPlayers()) {
             HashMap<ScotlandYard.Ticket, Integer> tickets = new HashMap<>();
 
@@ -109,20 +145,14 @@ public class SimulationGameState {
             }
 
             if (p.isDetective()) {
-                Player newDet = new Player(p, ImmutableMap.copyOf(tickets), board.getDetectiveLocation((Piece.Detective) p).orElseThrow());
-                detectives.add(newDet);
-                if (remainingPieces.contains(p)) {
-                    remaining.add(newDet);
-                }
+                detectives.add(new Player(p, ImmutableMap.copyOf(tickets), board.getDetectiveLocation((Piece.Detective) p).orElseThrow()));
             } else {
-                Player newMrX = new Player(p, ImmutableMap.copyOf(tickets), mrXPos);
-                mrX = newMrX;
-                if (remainingPieces.contains(p)) {
-                    remaining.add(newMrX);
-                }
+                mrX = new Player(p, ImmutableMap.copyOf(tickets), mrXPos);
             }
         }
 
+        state = new CompactGameState(board.getSetup(), Objects.requireNonNull(mrX), detectives, remainingPieces, mrXLog);
+
         if (mrXTurn) {
             this.previousTurnWasMrX = false;
         } else {
@@ -140,116 +170,91 @@ public class SimulationGameState {
      * @param initBoard The board
      */
     public SimulationGameState(List<LogEntry> mrXLog, Set<Player> remaining, List<Player> detectives, Player mrX, Board initBoard, boolean flag) {
-        this.mrXLog = new ArrayList<>(mrXLog);
-        //remaining logic is handled by advance.
-        this.remaining = new HashSet<>(remaining);
-        this.detectives = new ArrayList<>(detectives);
-        this.mrX = mrX;
+        this(new CompactGameState(initBoard.getSetup(), mrX, detectives,
+                remaining.stream().map(Player::piece).collect(Collectors.toSet()), mrXLog), initBoard, flag);
+    }
+
+    /**
+     * This creates a Simulation game state that wraps a compact state.
+     * @param state The compact state, which is owned by the new game state from now on
+     * @param initBoard The board
+     * @param flag Whether the previous turn was Mr X's
+     */
+    SimulationGameState(CompactGameState state, Board initBoard, boolean flag) {
+        this.state = state;
         this.initBoard = initBoard;
-        this.winner = new HashSet<>();
+        this.winner = null;
         this.previousTurnWasMrX = flag;
-
-
-        HashSet<Move> tempMoves = new HashSet<Move>();
-
-        // Add the available moves
-        if (this.remaining.stream().map(Player::isMrX).reduce(false, (val, acc) -> val || acc)) {
-            tempMoves.addAll(makeSingleMoves(initBoard.getSetup(), this.detectives, this.mrX, this.mrX.location()));
-
-            if (this.mrX.has(ScotlandYard.Ticket.DOUBLE)
-                    && this.mrX.tickets().values().stream().mapToInt(integer -> integer).sum() >= 2
-                    && initBoard.getSetup().moves.size() >= 2) {
-                tempMoves.addAll(makeDoubleMoves(initBoard.getSetup(), this.detectives, this.mrX, this.mrX.location()));
-
-            }
-        } else {
-            tempMoves.addAll(this.remaining.stream()
-                    .flatMap(d -> makeSingleMoves(initBoard.getSetup(), this.detectives, d, d.location())
-                            .stream())
-                    .collect(Collectors.toSet()));
-
-        }
-
-        this.avlMoves = Set.copyOf(tempMoves);
     }
 
     /**
-     * This function advances the game state after a particular move is played
+     * This function advances the game state after a particular move is played. The state is updated in place and
+     * returned, so use {@link #copy(SimulationGameState)} first if the original state is still needed.
      * @param move
      * @return the new game state
      */
     public SimulationGameState advance(Move move) {
 
-        if (!avlMoves.contains(move)) throw new IllegalArgumentException("Illegal move: " + move);
+        if (!isAvailable(move)) throw new IllegalArgumentException("Illegal move: " + move);
 
-        Player movedBy = (Player) remaining.stream().filter(x -> x.piece() == move.commencedBy()).toArray()[0];
+        state.advance(move);
 
-        Move.Visitor<Player> makeMove = new MoveVisitor(movedBy);
-        Move.Visitor<List<LogEntry>> addToLog = new LogVisitor(mrXLog, initBoard.getSetup().moves);
+        this.previousTurnWasMrX = move.commencedBy().isMrX();
+        this.mrXView = null;
+        this.detectivesView = null;
+        this.winner = null;
+        this.avlMoves = null;
+        return this;
+    }
 
-        // Adds the move to the log if mr X moved.
-        if (movedBy.isMrX()) {
-            mrXLog = move.accept(addToLog);
-        }
+    // Whether a move can be played; the rules are checked directly unless the moves have already been generated
+    private boolean isAvailable(Move move) {
+        return avlMoves != null ? avlMoves.contains(move) : state.isAvailable(move);
+    }
 
-        // Removes the necessary tickets and updates the locations.
-        Player updatedPlayer = move.accept(makeMove);
+    // What apply replaces in this object, so that undo can put it back without regenerating the moves
+    private record Undo(Set<Move> avlMoves, Set<Piece> winner, boolean previousTurnWasMrX) {}
 
-        this.remaining.remove(movedBy);
+    private ArrayDeque<Undo> undoStack;
 
-        // If it was a detective that moved, we need to add the ticket that they used to Mr X.
-        if (movedBy != mrX) {
-            this.detectives.remove(movedBy);
-            this.detectives.add(updatedPlayer);
+    /**
+     * This function plays a move on this game state in place, such that it can be taken back with {@link #undo()}.
+     * This lets depth first searches walk the tree with a single game state rather than copying it for every node.
+     * @param move The move to play
+     */
+    public void apply(Move move) {
 
-            // We use the ticketDelta function to get a list of all the tickets that changed. We give the number of used
-            // tickets to Mr X.
-            ImmutableMap<ScotlandYard.Ticket, Integer> ticketDelta = ticketDelta(movedBy.tickets(), updatedPlayer.tickets());
-            for (Map.Entry<ScotlandYard.Ticket, Integer> m : ticketDelta.entrySet()) {
-                for (int i = 1; i <= m.getValue(); i++) {
-                    this.mrX = this.mrX.give(m.getKey());
-                }
-            }
-        } else {
-            this.mrX = updatedPlayer;
+        if (!isAvailable(move)) throw new IllegalArgumentException("Illegal move: " + move);
+
+        if (undoStack == null) {
+            undoStack = new ArrayDeque<>();
         }
+        undoStack.push(new Undo(avlMoves, winner, previousTurnWasMrX));
 
-        Set<Player> tempRemove = new HashSet<Player>();
+        state.apply(move);
 
-        // If any of the players have no remaining tickets, then they can no longer play.
-        if (!remaining.isEmpty()) {
-            for (Player r : this.remaining) {
-                if (r.tickets().values().stream().mapToInt(Integer::intValue).sum() == 0) {
-                    tempRemove.add(r);
-                }
-            }
+        this.previousTurnWasMrX = move.commencedBy().isMrX();
+        this.mrXView = null;
+        this.detectivesView = null;
+        this.winner = null;
+        this.avlMoves = null;
+    }
 
-            for (Player r : tempRemove) {
-                remaining.remove(r);
-            }
-        }
+    /**
+     * This function takes back the last move played with {@link #apply(Move)}, restoring the game state exactly;
+     * including the tickets that were given to Mr X and the log entries that were added.
+     */
+    public void undo() {
+        if (undoStack == null || undoStack.isEmpty()) throw new IllegalStateException("No move to undo");
 
-        boolean newFlag;
+        Undo previous = undoStack.pop();
+        state.undo();
 
-        // If there are no remaining players, then we reset the remaining.
-        if (remaining.isEmpty()) {
-            Set<Player> resetRemaining = new HashSet<Player>();
-            if (movedBy.isMrX()) {
-                newFlag = true;
-                resetRemaining.addAll(this.detectives);
-            } else {
-                newFlag = false;
-                resetRemaining.add(this.mrX);
-            }
-            return new SimulationGameState(mrXLog, resetRemaining, detectives, mrX, initBoard, newFlag);
-        } else {
-            if (movedBy.isMrX())
-                newFlag = true;
-            else {
-                newFlag = false;
-            }
-            return new SimulationGameState(mrXLog, remaining, detectives, mrX, initBoard, newFlag);
-        }
+        this.previousTurnWasMrX = previous.previousTurnWasMrX();
+        this.mrXView = null;
+        this.detectivesView = null;
+        this.winner = previous.winner();
+        this.avlMoves = previous.avlMoves();
     }
 
     /**
@@ -258,83 +263,68 @@ public class SimulationGameState {
      */
     public ImmutableSet<Piece> getPlayers() {
 
-        Set<Piece> pieces = new HashSet<Piece>(remaining.stream().map(Player::piece).collect(Collectors.toSet()));
+        ImmutableSet.Builder<Piece> pieces = ImmutableSet.builder();
+
+        if (state.isMrXRemaining()) {
+            pieces.add(state.piece(CompactGameState.MRX));
+        }
 
-        for (Player d : detectives) {
-            pieces.add(d.piece());
+        for (int i = 1; i < state.numPieces(); i++) {
+            pieces.add(state.piece(i));
         }
 
-        return ImmutableSet.copyOf(pieces);
+        return pieces.build();
     }
 
     /**
-     * This function gets the winner of the game
-     * @return
+     * This function gets the winner of the game. It is worked out the first time it is asked for after each move and
+     * then kept, and every check reads a counter that the packed state keeps up to date, so it is cheap to call at
+     * every step of a playout.
+     * @return The winning pieces, or an empty set if the game is not over
      */
     public Set<Piece> getWinner() {
+        if (this.winner == null) {
+            this.winner = computeWinner();
+        }
+        return this.winner;
+    }
 
+    private ImmutableSet<Piece> computeWinner() {
         // If the detectives have run out of tickets, then the winner is Mr X
-        if (detectives.stream().map(x -> x.tickets().values().stream().mapToInt(Integer::intValue).sum()).mapToInt(Integer::intValue).sum() == 0) {
-            this.winner = ImmutableSet.of(mrX.piece());
-            return ImmutableSet.of(mrX.piece());
+        if (state.detectiveTickets() == 0) {
+            return state.mrXWinner();
         }
 
         // If any of the detectives have landed on Mr X's location, then the detectives win.
-        if (this.detectives.stream().anyMatch(d -> d.location() == this.mrX.location())) {
-            // If any of the detectives have a location that is on Mr X
-            HashSet<Piece> pieces = new HashSet<>(this.getPlayers());
-            pieces.remove(this.mrX.piece());
-
-            this.winner = ImmutableSet.copyOf(pieces);
-            return ImmutableSet.copyOf(pieces);
-        }
-
-        // If mr X has no available moves then the detectives win
-        if (avlMoves.stream().noneMatch(m -> m.commencedBy().isMrX()) && !this.avlMoves.isEmpty() && this.remaining.contains(this.mrX)) {
-            //System.out.println(avlMoves);
-            //System.out.println(this.remaining);
-            // If there are no available moves remaining for Mr X
-            HashSet<Piece> pieces = new HashSet<>(this.getPlayers());
-            pieces.remove(this.mrX.piece());
-
-            this.winner = ImmutableSet.copyOf(pieces);
-            return ImmutableSet.copyOf(pieces);
+        if (state.caughtBy() != -1) {
+            return state.detectivesWinner();
         }
 
         // If mr X has made the requisite number of moves without getting caught then they win.
-        if (initBoard.getSetup().moves.size() == mrXLog.size()) {
-            this.winner = ImmutableSet.of(mrX.piece());
-            return ImmutableSet.of(mrX.piece());
+        if (state.isLogFull()) {
+            return state.mrXWinner();
         }
 
-        if (avlMoves.isEmpty()) {
-            if (this.remaining.contains(this.mrX)) {
-                //if there are no avaliable moves and its mrX turn then mrX looses as he cannot go anywhere
-                HashSet<Piece> pieces = new HashSet<>(this.getPlayers());
-                pieces.remove(this.mrX.piece());
-                this.winner = ImmutableSet.copyOf(pieces);
-                return ImmutableSet.copyOf(pieces);
-
-            } else {
-                //if there are no avaliable moves and its detective turn then mrX looses
-                this.winner = ImmutableSet.of(mrX.piece());
-                return ImmutableSet.of(mrX.piece());
-
-            }
+        if (!hasMoves()) {
+            //if there are no avaliable moves and its mrX turn then mrX looses as he cannot go anywhere
+            //if there are no avaliable moves and its detective turn then mrX wins
+            return state.isMrXRemaining() ? state.detectivesWinner() : state.mrXWinner();
         }
 
-        if (this.winner == null) {
-            return ImmutableSet.of();
-        }
+        return ImmutableSet.of();
+    }
 
-        return this.winner;
+    /**
+     * @return Whether the game is over in this state
+     */
+    public boolean isGameOver() {
+        return !getWinner().isEmpty();
     }
 
     public Optional<Player> getCaughtBy() {
-        for (Player d : this.detectives) {
-            if (d.location() == this.mrX.location()) {
-                return Optional.of(d);
-            }
+        int caughtBy = state.caughtBy();
+        if (caughtBy != -1) {
+            return Optional.of(getDetectives().get(caughtBy - 1));
         }
 
         return Optional.empty();
@@ -347,10 +337,13 @@ public class SimulationGameState {
 
     /**
      * This function gets the available moves in the game state
-     * @return
+     * @return The available moves, or an empty set once the game is over
      */
     public Set<Move> getAvailableMoves() {
-        if (this.winner.isEmpty()) {
+        if (!isGameOver()) {
+            if (this.avlMoves == null) {
+                this.avlMoves = state.availableMoves();
+            }
             return this.avlMoves;
         } else {
             return ImmutableSet.of();
@@ -358,17 +351,53 @@ public class SimulationGameState {
 
     }
 
+    /**
+     * This function enumerates the available moves one at a time, without building the set that
+     * {@link #getAvailableMoves()} returns. Moves are generated as the iterator reaches them, so a caller that only
+     * needs the first few, or only some kinds of move, does not pay for all of Mr X's double moves. The game state must
+     * not be advanced while the iterator is in use.
+     * @param filter Which of the available moves to return
+     * @return An iterator over the available moves that pass the filter
+     */
+    public Iterator<Move> getAvailableMoves(Predicate<? super Move> filter) {
+        if (isGameOver()) {
+            return Collections.emptyIterator();
+        }
+        if (this.avlMoves != null) {
+            return this.avlMoves.stream().filter(filter).iterator();
+        }
+        return state.availableMoves(filter);
+    }
+
+    /**
+     * This function picks one of the available moves uniformly at random, straight from the packed state, so neither
+     * the set of moves nor any of the moves that are not picked are built.
+     * @param random The random number generator to use
+     * @return The move, or null if there are no available moves
+     */
+    public Move getRandomMove(RandomGenerator random) {
+        if (isGameOver()) {
+            return null;
+        }
+        return state.randomMove(random);
+    }
+
+    // Whether there are any moves, not taking the winner into account, without generating them all
+    private boolean hasMoves() {
+        return avlMoves != null ? !avlMoves.isEmpty() : state.hasAvailableMoves();
+    }
+
     /**
      * This function creates a copy of the game state
      * @param simGameState
      * @return
      */
     public SimulationGameState copy(SimulationGameState simGameState) {
-        return new SimulationGameState(mrXLog, remaining, detectives, mrX, initBoard, previousTurnWasMrX);
+        return new SimulationGameState(state.copy(), initBoard, previousTurnWasMrX);
     }
 
     public int getMrXLocAfterMrXMoveAdvance() {
-        return mrX.location();
+        return state.mrXLocation();
     }
 
     /**
@@ -377,25 +406,12 @@ public class SimulationGameState {
      * @return
      */
     public int getMrXLocation() {
-        boolean mrXTurn = isMrXTurn(avlMoves);
-
-        int mrXPos = -1;
-
-        if (mrXTurn) {
-            for (Move avlMove : List.copyOf(avlMoves)) {
-                if (avlMove.commencedBy().isMrX()) {
-                    return avlMove.source();
-                }
-            }
-        } else {
-            for (int entry = mrXLog.size() - 1; entry >= 0; entry--) {
-                if (mrXLog.get(entry).location().isPresent()) {
-                    return mrXLog.get(entry).location().get();
-                }
-            }
+        // When Mr X is remaining the available moves are all his, so it is his turn if he has any
+        if (state.isMrXRemaining() && hasMoves()) {
+            return state.mrXLocation();
         }
 
-        return mrXPos;
+        return state.lastRevealedLocation();
     }
 //    advanceSimulation :: SimGameState -> Move -> (SimGameState, Integer)
     public static Pair<SimulationGameState, Integer> advanceSimulation(SimulationGameState simGameState, Move move) {
@@ -1,11 +1,11 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 import uk.ac.bris.cs.scotlandyard.model.GameSetup;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Player;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceStrategy;
 
 import java.util.*;
 
@@ -23,6 +23,34 @@ public class SimulationUtilityFunctions {
         return avlMoves.stream().anyMatch(x -> x.commencedBy().isMrX());
     }
 
+    /**
+     * This function gets where a move ends, without allocating a visitor
+     * @param move The move
+     * @return The destination of a single move, or the second destination of a double move
+     */
+    public static int destination(Move move) {
+        if (move instanceof Move.DoubleMove doubleMove) {
+            return doubleMove.destination2;
+        }
+        return ((Move.SingleMove) move).destination;
+    }
+
+    /**
+     * This function finds how far the closest detective is from a node
+     * @param distances The distances to use
+     * @param simGameState The game state, whose detectives are looked at
+     * @param node The node
+     * @return The smallest distance from a detective to the node
+     */
+    public static double distanceToClosestDetective(DistanceStrategy distances, SimulationGameState simGameState, int node) {
+        CompactGameState state = simGameState.getCompactState();
+        double closest = Double.POSITIVE_INFINITY;
+        for (int i = 1; i < state.numPieces(); i++) {
+            closest = Math.min(closest, distances.findDistance(state.location(i), node, simGameState));
+        }
+        return closest;
+    }
+
     /**
      * This function returns all the possible single moves for a particular board
      * @param setup
@@ -34,8 +62,10 @@ public class SimulationUtilityFunctions {
     public static Set<Move.SingleMove> makeSingleMoves(GameSetup setup, List<Player> detectives, Player player, int source) {
         // we create a hashmap to store the moves
         HashSet<Move.SingleMove> possibleMoves = new HashSet<>();
+        CompiledGraph graph = CompiledGraph.of(setup);
 
-        for (int destination : setup.graph.adjacentNodes(source)) {
+        for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+            int destination = graph.neighbour(edge);
             //  find out if destination is occupied by a detective
             //  if the location is occupied, don't add to the collection of moves to return
 
@@ -44,19 +74,17 @@ public class SimulationUtilityFunctions {
             }
 
             // checks all regular modes of transport using regular tickets
-            for (ScotlandYard.Transport t : Objects.requireNonNull(setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of()))) {
-                if (!player.has(t.requiredTicket())) {
+            for (ScotlandYard.Ticket ticket : ScotlandYard.Ticket.values()) {
+                if ((graph.tickets(edge) & (1 << ticket.ordinal())) == 0 || !player.has(ticket)) {
                     continue;
                 }
-                possibleMoves.add(new Move.SingleMove(player.piece(), player.location(), t.requiredTicket(), destination));
+                possibleMoves.add(new Move.SingleMove(player.piece(), player.location(), ticket, destination));
             }
 
             // if the player is mr x and they have remaining secret tickets, then we also add these as possible moves.
 
             if (player.isMrX() && player.has(ScotlandYard.Ticket.SECRET)) {
-                for (ScotlandYard.Transport t : Objects.requireNonNull(setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of()))) {
-                    possibleMoves.add(new Move.SingleMove(player.piece(), player.location(), ScotlandYard.Ticket.SECRET, destination));
-                }
+                possibleMoves.add(new Move.SingleMove(player.piece(), player.location(), ScotlandYard.Ticket.SECRET, destination));
             }
         }
 
@@ -0,0 +1,86 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompactGameState;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
+
+public class CompactGameStateTests {
+
+    private SimulationGameState initialState() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 10);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        return new SimulationGameState(g);
+    }
+
+    @Test
+    public void TestCompactGameStateAdvanceUpdatesPositionsAndLog() throws IOException {
+        SimulationGameState sgs = initialState();
+        CompactGameState state = sgs.getCompactState();
+
+        state.advance(new Move.SingleMove(MRX, 1, Ticket.TAXI, 8));
+
+        assertThat(state.mrXLocation()).isEqualTo(8);
+        assertThat(state.ticketCount(0, Ticket.TAXI)).isEqualTo(3);
+        assertThat(state.logSize()).isEqualTo(1);
+        assertThat(state.logEntry(0)).isEqualTo(LogEntry.hidden(Ticket.TAXI));
+        assertThat(state.isMrXRemaining()).isFalse();
+        assertThat(state.isRemaining(1)).isTrue();
+    }
+
+    @Test
+    public void TestCompactGameStateDetectiveTicketsGivenToMrX() throws IOException {
+        SimulationGameState sgs = initialState();
+        sgs = sgs.copy(sgs).advance(new Move.SingleMove(MRX, 1, Ticket.TAXI, 8));
+        sgs = sgs.copy(sgs).advance(new Move.SingleMove(Piece.Detective.RED, 10, Ticket.TAXI, 11));
+
+        assertThat(sgs.getDetectives().get(0).location()).isEqualTo(11);
+        assertThat(sgs.getDetectives().get(0).tickets().get(Ticket.TAXI)).isEqualTo(10);
+        assertThat(sgs.getMrX().tickets().get(Ticket.TAXI)).isEqualTo(4);
+        assertThat(sgs.getCompactState().isMrXRemaining()).isTrue();
+    }
+
+    @Test
+    public void TestCompactGameStateCopyIsIndependent() throws IOException {
+        SimulationGameState sgs = initialState();
+        SimulationGameState advanced = sgs.copy(sgs).advance(new Move.SingleMove(MRX, 1, Ticket.TAXI, 8));
+
+        assertThat(sgs.getMrX().location()).isEqualTo(1);
+        assertThat(sgs.getMrXLog()).isEmpty();
+        assertThat(advanced.getMrX().location()).isEqualTo(8);
+        assertThat(advanced.getMrXLog().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void TestCompactGameStateZobristKeyIgnoresMoveOrder() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player red = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 10);
+        Player blue = new Player(Piece.Detective.BLUE, defaultDetectiveTickets(), 29);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(red, blue));
+        SimulationGameState initial = new SimulationGameState(g);
+        Move redMove = new Move.SingleMove(Piece.Detective.RED, 10, Ticket.TAXI, 11);
+        Move blueMove = new Move.SingleMove(Piece.Detective.BLUE, 29, Ticket.BUS, 41);
+
+        SimulationGameState redFirst = initial.copy(initial).advance(new Move.SingleMove(MRX, 1, Ticket.TAXI, 8));
+        SimulationGameState blueFirst = redFirst.copy(redFirst);
+        redFirst.advance(redMove).advance(blueMove);
+        blueFirst.advance(blueMove).advance(redMove);
+
+        assertThat(redFirst.getZobristKey()).isEqualTo(blueFirst.getZobristKey());
+        assertThat(redFirst.getZobristKey()).isNotEqualTo(initial.getZobristKey());
+
+        // The key kept up to date by advance is the same as one computed from scratch
+        CompactGameState fresh = new CompactGameState(redFirst.getSetup(), redFirst.getMrX(), redFirst.getDetectives(),
+                Set.of(MRX), redFirst.getMrXLog());
+        assertThat(redFirst.getZobristKey()).isEqualTo(fresh.zobristKey());
+    }
+}
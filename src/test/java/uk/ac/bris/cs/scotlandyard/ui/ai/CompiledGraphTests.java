@@ -0,0 +1,44 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompiledGraph;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompiledGraphTests {
+
+    @Test
+    public void TestCompiledGraphMatchesGameGraph() throws IOException {
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = ScotlandYard.standardGraph();
+        CompiledGraph compiled = CompiledGraph.of(graph);
+
+        for (int node : graph.nodes()) {
+            Set<Integer> neighbours = new HashSet<>();
+            for (int edge = compiled.start(node); edge < compiled.end(node); edge++) {
+                int neighbour = compiled.neighbour(edge);
+                neighbours.add(neighbour);
+
+                ImmutableSet<ScotlandYard.Transport> transports = graph.edgeValue(node, neighbour).orElseThrow();
+                assertThat(compiled.transportCount(edge)).isEqualTo(transports.size());
+                for (ScotlandYard.Transport t : transports) {
+                    assertThat(compiled.transports(edge) & (1 << t.ordinal())).isNotEqualTo(0);
+                    assertThat(compiled.tickets(edge) & (1 << t.requiredTicket().ordinal())).isNotEqualTo(0);
+                }
+            }
+            assertThat(neighbours).isEqualTo(graph.adjacentNodes(node));
+        }
+    }
+
+    @Test
+    public void TestCompiledGraphIsOnlyBuiltOnce() throws IOException {
+        ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = ScotlandYard.standardGraph();
+        assertThat(CompiledGraph.of(graph)).isSameAs(CompiledGraph.of(graph));
+    }
+}
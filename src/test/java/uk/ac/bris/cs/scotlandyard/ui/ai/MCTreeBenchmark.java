@@ -0,0 +1,88 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
+
+/**
+ * Compares the two ways of storing monte carlo trees ({@link MCTreeStorage}) by building a tree from the start of a
+ * five detective game on one thread for a fixed time, and printing the rollouts per second and the heap used per node.
+ * It is not a test, so it is run by hand: pass the number of seconds to build each tree for as the argument.
+ */
+public class MCTreeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        ImmutableList.Builder<Player> detectives = ImmutableList.builder();
+        Piece.Detective[] pieces = Piece.Detective.values();
+        for (int i = 0; i < pieces.length; i++) {
+            detectives.add(new Player(pieces[i], defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(i)));
+        }
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, detectives.build());
+
+        // Warm up the JIT and the distance table, so neither is counted against the first tree
+        new MonteCarlo(0.3, 1, new SimulationGameState(g), 0, 8, Deadline.after(seconds, TimeUnit.SECONDS)).buildTree();
+        new MonteCarlo(0.3, 1, new SimulationGameState(g), 0, 8, Deadline.after(seconds, TimeUnit.SECONDS)).buildArenaTree();
+
+        for (MCTreeStorage storage : MCTreeStorage.values()) {
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            MonteCarlo monteCarlo = new MonteCarlo(0.3, 1, new SimulationGameState(g), 0, 8, Deadline.after(seconds, TimeUnit.SECONDS));
+            Object tree;
+            double rollouts;
+            long nodes;
+            if (storage == MCTreeStorage.STATE_PER_NODE) {
+                MCRoot root = monteCarlo.buildTree();
+                rollouts = root.numVisits;
+                nodes = countNodes(root);
+                tree = root;
+            } else {
+                MCArena arena = monteCarlo.buildArenaTree(storage == MCTreeStorage.REPLAY_TRANSPOSITIONS);
+                rollouts = arena.visits(MCArena.ROOT);
+                nodes = countNodes(arena);
+                tree = arena;
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            long heapAfter = usedHeap();
+
+            System.out.printf("%s: %.0f rollouts/s, %d nodes, %.0f bytes/node%n", storage, rollouts / elapsedSeconds,
+                    nodes, (double) (heapAfter - heapBefore) / nodes);
+            if (tree == null) throw new AssertionError(); // keep the tree reachable until the heap has been measured
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long countNodes(MCNode node) {
+        long count = 1;
+        if (node instanceof MCRoot root) {
+            for (MCChild child : root.children) count += countNodes(child);
+        } else if (node instanceof MCFork fork) {
+            for (MCChild child : fork.children) count += countNodes(child);
+        }
+        return count;
+    }
+
+    // The positions that have been explored; the arena also has room for their unexplored siblings
+    private static long countNodes(MCArena arena) {
+        long count = 0;
+        for (int node = 0; node < arena.numNodes(); node++) {
+            if (arena.visits(node) > 0 && !arena.isTransposition(node)) count++;
+        }
+        return count;
+    }
+}
@@ -7,6 +7,7 @@ import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
 import uk.ac.bris.cs.scotlandyard.ui.ai.minimax.MinimaxFinal;
 import uk.ac.bris.cs.scotlandyard.ui.ai.minimax.MoveDestinationVisitor;
+import uk.ac.bris.cs.scotlandyard.ui.ai.minimax.TranspositionTable;
 
 import javax.annotation.Nonnull;
 import java.util.LinkedList;
@@ -75,5 +76,25 @@ public class MinimaxTests {
         assertThat(testMove.accept(new MoveDestinationVisitor())).isEqualTo(30);
     }
 
+    @Test
+    public void TestTranspositionTableDepthPreferred() {
+        TranspositionTable table = new TranspositionTable(4, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+        Move move = new Move.SingleMove(testPiece, 19, ScotlandYard.Ticket.TAXI, 20);
+
+        table.store(3, 4, TranspositionTable.Bound.EXACT, 10.0, move);
+        assertThat(table.probe(3).score()).isEqualTo(10.0);
+        assertThat(table.probe(3).bestMove()).isEqualTo(move);
+        assertThat(table.probe(19)).isNull();
 
+        // 19 shares a slot with 3, but a shallower search does not replace a deeper one from the same search
+        table.store(19, 2, TranspositionTable.Bound.LOWER, 5.0, null);
+        assertThat(table.probe(3)).isNotNull();
+        assertThat(table.probe(19)).isNull();
+
+        // Entries from an earlier search are replaced
+        table.newSearch();
+        table.store(19, 2, TranspositionTable.Bound.LOWER, 5.0, null);
+        assertThat(table.probe(3)).isNull();
+        assertThat(table.probe(19).bound()).isEqualTo(TranspositionTable.Bound.LOWER);
+    }
 }
@@ -1,15 +1,23 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
 import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.*;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
 import java.io.IOException;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
 
@@ -112,4 +120,315 @@ public class MonteCarloTests {
         assertThat(myRoot.numWins).isEqualTo(1);
         assertThat(myRoot.numVisits).isEqualTo(1);
     }
+
+    @Test
+    public void TestMCStrategyStopsAtDeadline() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MCStrategy strategy = new MCStrategy(0.3, 1, 1, Integer.MAX_VALUE, 8);
+
+        long start = System.nanoTime();
+        Move move = strategy.selectForMrX(g, Deadline.after(300, TimeUnit.MILLISECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(g.getAvailableMoves()).contains(move);
+        assertThat(elapsedMillis).isLessThan(2000);
+    }
+
+    @Test
+    public void TestMergeRootsSumsChildStatistics() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+
+        MCRoot first = new MCRoot(new SimulationGameState(g), new LinkedList<>());
+        MCRoot second = new MCRoot(new SimulationGameState(g), new LinkedList<>());
+        first.accept(new ExpandingMCNodeVisitor());
+        second.accept(new ExpandingMCNodeVisitor());
+        second.accept(new ExpandingMCNodeVisitor());
+        first.children.get(0).accept(new UpdatingMCNodeVisitor(1));
+        second.children.get(0).accept(new UpdatingMCNodeVisitor(1));
+        second.children.get(1).accept(new UpdatingMCNodeVisitor(0));
+
+        MCRoot merged = MonteCarlo.mergeRoots(List.of(first, second));
+
+        // Both trees expanded the same first move, so its statistics are summed
+        assertThat(merged.children.size()).isEqualTo(2);
+        assertThat(merged.children.get(0).numVisits).isEqualTo(2);
+        assertThat(merged.children.get(0).numWins).isEqualTo(2);
+        assertThat(merged.children.get(1).numVisits).isEqualTo(1);
+        assertThat(merged.numVisits).isEqualTo(3);
+
+        // The trees themselves are left as they were
+        assertThat(first.children.size()).isEqualTo(1);
+        assertThat(first.children.get(0).numVisits).isEqualTo(1);
+    }
+
+    @Test
+    public void TestFindReusableRootPromotesMatchingDescendant() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MCRoot previous = new MonteCarlo(0.3, 1, new SimulationGameState(g), 500, 8).buildTree();
+
+        // Follow the most visited line of play to our next turn, as if those moves were played in the game
+        MCFork afterMrX = (MCFork) previous.children.stream().filter(child -> child instanceof MCFork)
+                .max((a, b) -> Double.compare(a.numVisits, b.numVisits)).orElseThrow();
+        MCFork afterDetective = (MCFork) afterMrX.children.stream().filter(child -> child instanceof MCFork)
+                .max((a, b) -> Double.compare(a.numVisits, b.numVisits)).orElseThrow();
+        Board.GameState next = g.advance(afterMrX.parentAction).advance(afterDetective.parentAction);
+
+        MCRoot reused = MonteCarlo.findReusableRoot(previous, new SimulationGameState(next), 2);
+
+        assertThat(reused).isNotNull();
+        assertThat(reused.numVisits).isEqualTo(afterDetective.numVisits);
+        assertThat(reused.children.stream().allMatch(child -> child.parent == reused)).isTrue();
+        assertThat(MonteCarlo.findReusableRoot(previous, new SimulationGameState(next), 1)).isNull();
+    }
+
+    @Test
+    public void TestSharedTreeStatisticsAreConsistent() throws Exception {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MCRoot root = new MCRoot(new SimulationGameState(g), new LinkedList<>());
+
+        List<Thread> threads = new LinkedList<>();
+        for (int i = 0; i < 4; i++) {
+            MonteCarlo monteCarlo = new MonteCarlo(0.3, 1, root.currGameState, 200, 8);
+            threads.add(new Thread(() -> monteCarlo.expandSharedTree(root, 1)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every rollout went through exactly one child of the root, and all the virtual losses have been taken away
+        double childVisits = root.children.stream().mapToDouble(child -> child.numVisits).sum();
+        assertThat(root.numVisits).isEqualTo(childVisits);
+        assertThat(root.numVisits).isGreaterThan(0.0);
+        assertThat(root.numVisits).isLessThanOrEqualTo(4 * 201.0);
+    }
+
+    @Test
+    public void TestArenaTreeStatisticsAreConsistent() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        SimulationGameState initGameState = new SimulationGameState(g);
+        long initialKey = initGameState.getZobristKey();
+
+        MCArena arena = new MonteCarlo(0.3, 1, initGameState, 300, 8).buildArenaTree();
+
+        // Every rollout went through exactly one explored child of the root
+        int first = arena.firstChild(MCArena.ROOT);
+        int childVisits = 0;
+        for (int child = first; child < first + arena.numExplored(MCArena.ROOT); child++) {
+            childVisits += arena.visits(child);
+        }
+        assertThat(arena.visits(MCArena.ROOT)).isEqualTo(301);
+        assertThat(childVisits).isEqualTo(301);
+
+        // All the moves played on the way down have been taken back
+        assertThat(initGameState.getZobristKey()).isEqualTo(initialKey);
+        assertThat(g.getAvailableMoves()).contains(MonteCarlo.argMaxProb(arena, initGameState));
+    }
+
+    @Test
+    public void TestReplayedTreesChooseAvailableMove() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MCStrategy strategy = new MCStrategy(0.3, 2, 1, 200, 8, MCOptions.builder().storage(MCTreeStorage.REPLAY).build());
+
+        assertThat(g.getAvailableMoves()).contains(strategy.selectForMrX(g));
+    }
+
+    @Test
+    public void TestArenaTreeSharesTranspositions() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player red = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Player blue = new Player(Piece.Detective.BLUE, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(1));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(red, blue));
+        SimulationGameState initGameState = new SimulationGameState(g);
+        long initialKey = initGameState.getZobristKey();
+
+        // With a high exploration constant the tree is searched almost breadth first, so the detectives' moves are
+        // soon explored in both orders
+        MCArena arena = new MonteCarlo(100, 1, initGameState, 3000, 8).buildArenaTree(true);
+
+        int transpositions = 0;
+        for (int node = 0; node < arena.numNodes(); node++) {
+            if (arena.isTransposition(node) && arena.visits(node) > 0) {
+                transpositions++;
+            }
+        }
+        assertThat(transpositions).isGreaterThan(0);
+        assertThat(arena.visits(MCArena.ROOT)).isEqualTo(3001);
+        assertThat(initGameState.getZobristKey()).isEqualTo(initialKey);
+    }
+
+    @Test
+    public void TestRolloutBackPropagatesAlongPath() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MCRoot root = new MonteCarlo(0.3, 1, new SimulationGameState(g), 500, 8).buildTree();
+
+        // Every rollout adds one visit to the root and to the nodes below it on its path
+        double childVisits = root.children.stream().mapToDouble(child -> child.numVisits).sum();
+        assertThat(root.numVisits).isEqualTo(501.0);
+        assertThat(childVisits).isEqualTo(501.0);
+        for (MCChild child : root.children) {
+            if (child instanceof MCFork fork && fork.unexploredMoves.isEmpty()) {
+                double grandchildVisits = fork.children.stream().mapToDouble(grandchild -> grandchild.numVisits).sum();
+                assertThat(grandchildVisits).isEqualTo(fork.numVisits - 1);
+            }
+        }
+    }
+
+    @Test
+    public void TestTruncatedRolloutsUseLeafEvaluator() throws IOException {
+        // The detective starts too far from Mr X to catch him within the few moves that the tree reaches
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 199);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MonteCarlo monteCarlo = new MonteCarlo(0.3, 1, new SimulationGameState(g), 200, 0, Deadline.NONE,
+                new SplittableRandom(1), MCOptions.builder().leafEvaluator(simGameState -> 0.25).build());
+        MCRoot root = monteCarlo.buildTree();
+
+        // With no moves played out, every rollout is scored by the evaluator alone
+        for (MCChild child : root.children) {
+            assertThat(child).isInstanceOf(MCFork.class);
+            assertThat(child.numWins).isCloseTo(0.25 * child.numVisits, within(1e-9));
+        }
+    }
+
+    @Test
+    public void TestBatchedRolloutsBackPropagateEveryPlayout() throws Exception {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        MonteCarlo monteCarlo = new MonteCarlo(0.3, 1, new SimulationGameState(g), 99, 8);
+        MCRoot root;
+        try {
+            root = monteCarlo.buildTreeInBatches(new MCRoot(new SimulationGameState(g), new LinkedList<>()), 4, 1, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 25 batches of 4, with all of the virtual loss taken away again
+        double childVisits = root.children.stream().mapToDouble(child -> child.numVisits).sum();
+        assertThat(root.numVisits).isEqualTo(100.0);
+        assertThat(childVisits).isEqualTo(100.0);
+        assertThat(root.numWins).isBetween(0.0, 100.0);
+        assertThat(monteCarlo.searchStats).isEqualTo(new MCSearchStats(100, 0, 0));
+    }
+
+    @Test
+    public void TestRaveUpdatesAmafStatistics() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MCRoot root = new MonteCarlo(0.3, 1, new SimulationGameState(g), 500, 8, Deadline.NONE,
+                new SplittableRandom(1), MCOptions.builder().raveEquivalence(100).build()).buildTree();
+
+        // A child's move is played in every rollout through it, and in others that play it later on
+        for (MCChild child : root.children) {
+            assertThat(child.amafVisits).isGreaterThanOrEqualTo(child.numVisits);
+            assertThat(child.amafWins).isBetween(0.0, child.amafVisits);
+        }
+        assertThat(root.children.stream().anyMatch(child -> child.amafVisits > child.numVisits)).isTrue();
+    }
+
+    @Test
+    public void TestSolverStopsOnceCaptureIsProven() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 19);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        SimulationGameState initGameState = new SimulationGameState(g);
+
+        // Mr X moves next to the detective, who can then catch him straight away
+        DistanceTable table = DistanceTable.of(initGameState.getCompactState().getGraph(), DistanceTable.Variant.DIJKSTRA);
+        Move blunder = initGameState.getAvailableMoves().stream()
+                .filter(move -> move instanceof Move.SingleMove single && table.distance(19, single.destination) == 1)
+                .findFirst().orElseThrow();
+        SimulationGameState detectiveTurn = initGameState.copy(initGameState).advance(blunder);
+
+        MCRoot root = new MonteCarlo(0.3, 1, detectiveTurn, 10000, 8).buildTree();
+
+        assertThat(root.proof).isEqualTo(MCProof.WIN);
+        assertThat(root.numVisits).isLessThan(10000.0);
+        Move capture = MonteCarlo.argMaxProb(root, detectiveTurn).parentAction;
+        assertThat(((Move.SingleMove) capture).destination).isEqualTo(((Move.SingleMove) blunder).destination);
+    }
+
+    @Test
+    public void TestBuildTreeStopsOnceBestMoveIsDecided() throws IOException {
+        // Mr X can only take a taxi, to 8 next to the detective or to 9 away from him, so once the move to 8 is proven
+        // to lose every rollout goes through 9 and it soon cannot be caught up with
+        ImmutableMap<Ticket, Integer> taxiOnly = ImmutableMap.of(Ticket.TAXI, 24, Ticket.BUS, 0, Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+        Player mrX = new Player(MRX, taxiOnly, 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 18);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+
+        MonteCarlo monteCarlo = new MonteCarlo(0.3, 1, new SimulationGameState(g), 3000, 8, Deadline.NONE, new SplittableRandom(1));
+        MCRoot root = monteCarlo.buildTree();
+
+        MCSearchStats stats = monteCarlo.searchStats;
+        assertThat(stats.rollouts()).isLessThan(3001);
+        assertThat(stats.rollouts() + stats.rolloutsSaved()).isEqualTo(3001L);
+        assertThat(root.numVisits).isEqualTo((double) stats.rollouts());
+        assertThat(((Move.SingleMove) MonteCarlo.argMaxProb(root, new SimulationGameState(g)).parentAction).destination).isEqualTo(9);
+    }
+
+    @Test
+    public void TestBestMoveIsNotDecidedByChildProvenToLose() throws IOException {
+        ImmutableMap<Ticket, Integer> taxiOnly = ImmutableMap.of(Ticket.TAXI, 24, Ticket.BUS, 0, Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+        Player mrX = new Player(MRX, taxiOnly, 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 18);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+
+        MonteCarlo monteCarlo = new MonteCarlo(0.3, 1, new SimulationGameState(g), 0, 8, Deadline.NONE, new SplittableRandom(1));
+        MCRoot root = new MCRoot(new SimulationGameState(g), new LinkedList<>());
+        while (!root.unexploredMoves.isEmpty()) {
+            root.accept(new ExpandingMCNodeVisitor());
+        }
+        MCChild toEight = root.children.stream().filter(child -> ((Move.SingleMove) child.parentAction).destination == 8).findFirst().orElseThrow();
+        MCChild toNine = root.children.stream().filter(child -> ((Move.SingleMove) child.parentAction).destination == 9).findFirst().orElseThrow();
+
+        // The move to 8 has far more wins than the rollouts left, so it would be decided on if it was not proven
+        toEight.numWins = 1000;
+        toNine.numWins = 5;
+        assertThat(monteCarlo.isDecided(root, 10)).isTrue();
+
+        // Once it is proven to lose it is never chosen, and the move to 9 is not yet far enough ahead of the others
+        toEight.proof = MCProof.LOSS;
+        assertThat(monteCarlo.isDecided(root, 10)).isFalse();
+        assertThat(MonteCarlo.argMaxProb(root, new SimulationGameState(g))).isSameAs(toNine);
+
+        // A move proven to win is chosen however many rollouts are left
+        toNine.proof = MCProof.WIN;
+        assertThat(monteCarlo.isDecided(root, 1_000_000)).isTrue();
+    }
+
+    @Test
+    public void TestProgressiveWideningAddsChildrenGradually() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(0));
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        MCRoot root = new MonteCarlo(0.3, 1, new SimulationGameState(g), 500, 8, Deadline.NONE,
+                new SplittableRandom(1), MCOptions.builder().wideningExponent(0.5).build()).buildTree();
+
+        // Without widening every one of the root's moves would have been explored by now
+        assertThat(root.unexploredMoves).isNotEmpty();
+        assertThat((double) root.children.size()).isLessThanOrEqualTo(2 * Math.sqrt(root.numVisits) + 1);
+        // and the single moves, which do not use up a double move ticket, are tried before the double moves
+        assertThat(root.children.get(0).parentAction).isInstanceOf(Move.SingleMove.class);
+        assertThat(root.children.stream().anyMatch(child -> child instanceof MCFork fork && !fork.children.isEmpty())).isTrue();
+    }
 }
@@ -0,0 +1,66 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.CompactGameState;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
+
+public class MoveSamplingTests {
+
+    // Mr X at 1 with two detectives nearby; Mr X is to move, and has double and secret moves
+    private SimulationGameState mrXToMove() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player red = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 9);
+        Player blue = new Player(Piece.Detective.BLUE, defaultDetectiveTickets(), 46);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(red, blue));
+        SimulationGameState sgs = new SimulationGameState(g);
+        // Copying builds the game state from the packed state, so its moves are in the order they are generated in
+        return sgs.copy(sgs);
+    }
+
+    @Test
+    public void TestMoveAtMatchesGeneratedMoves() throws IOException {
+        SimulationGameState mrXTurn = mrXToMove();
+        Move first = mrXTurn.getAvailableMoves().stream().filter(m -> m instanceof Move.SingleMove).findFirst().orElseThrow();
+        SimulationGameState detectivesTurn = mrXTurn.copy(mrXTurn).advance(first);
+
+        for (SimulationGameState sgs : List.of(mrXTurn, detectivesTurn)) {
+            CompactGameState state = sgs.getCompactState();
+            List<Move> moves = new ArrayList<>(sgs.getAvailableMoves());
+            assertThat(state.countAvailableMoves()).isEqualTo(moves.size());
+            for (int i = 0; i < moves.size(); i++) {
+                assertThat(state.moveAt(i)).isEqualTo(moves.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void TestRandomMoveIsUniform() throws IOException {
+        SimulationGameState sgs = mrXToMove();
+        Set<Move> moves = sgs.getAvailableMoves();
+        int samplesPerMove = 200;
+        SplittableRandom random = new SplittableRandom(1);
+
+        Map<Move, Integer> counts = new HashMap<>();
+        for (int i = 0; i < moves.size() * samplesPerMove; i++) {
+            counts.merge(sgs.getRandomMove(random), 1, Integer::sum);
+        }
+        assertThat(counts.keySet()).isEqualTo(moves);
+
+        // Pearson's chi-squared statistic has a mean of (moves - 1), so allow six standard deviations above that
+        double chiSquared = 0;
+        for (int count : counts.values()) {
+            chiSquared += Math.pow(count - samplesPerMove, 2) / samplesPerMove;
+        }
+        int degreesOfFreedom = moves.size() - 1;
+        assertThat(chiSquared).isLessThan(degreesOfFreedom + 6 * Math.sqrt(2 * degreesOfFreedom));
+    }
+}
@@ -0,0 +1,47 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.MoveTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
+
+public class MoveTableTests {
+
+    @Test
+    public void TestGeneratedMovesAreInternedAndHaveUniqueCodes() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player red = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 9);
+        Player blue = new Player(Piece.Detective.BLUE, defaultDetectiveTickets(), 46);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(red, blue));
+        SimulationGameState board = new SimulationGameState(g);
+        MoveTable table = MoveTable.of(board.getCompactState().getGraph());
+
+        Move first = board.getAvailableMoves().stream().filter(m -> m instanceof Move.SingleMove).findFirst().orElseThrow();
+        for (SimulationGameState sgs : List.of(board.copy(board), board.copy(board).advance(first))) {
+            List<Move> moves = new ArrayList<>(sgs.getAvailableMoves());
+            List<Move> again = new ArrayList<>(sgs.copy(sgs).getAvailableMoves());
+            Set<Integer> codes = new HashSet<>();
+            for (int i = 0; i < moves.size(); i++) {
+                Move move = moves.get(i);
+                // Generating the moves again gives the very same objects, which their codes turn back into
+                assertThat(again.get(i)).isSameAs(move);
+                assertThat(table.decode(table.encode(move))).isSameAs(move);
+                codes.add(table.encode(move));
+            }
+            assertThat(codes.size()).isEqualTo(moves.size());
+        }
+
+        // Moves made by the game itself have the same codes as the generated ones
+        for (Move move : g.getAvailableMoves()) {
+            assertThat(table.decode(table.encode(move))).isEqualTo(move);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.AvoidDetectivesPlayout;
+import uk.ac.bris.cs.scotlandyard.ui.ai.montecarlo.playoutpolicies.EpsilonGreedyPlayout;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationUtilityFunctions.destination;
+
+public class PlayoutPolicyTests {
+
+    // Mr X at 1 with a detective at 9, which is next to some of the places that Mr X can go
+    private SimulationGameState mrXNextToDetective() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 9);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        return new SimulationGameState(g);
+    }
+
+    @Test
+    public void TestAvoidDetectivesPlayoutNeverMovesNextToDetective() throws IOException {
+        SimulationGameState sgs = mrXNextToDetective();
+        DistanceTable table = DistanceTable.of(sgs.getCompactState().getGraph(), DistanceTable.Variant.DIJKSTRA);
+        assertThat(sgs.getAvailableMoves().stream().anyMatch(move -> table.distance(9, destination(move)) <= 1)).isTrue();
+
+        AvoidDetectivesPlayout policy = new AvoidDetectivesPlayout();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 200; i++) {
+            Move move = policy.chooseMove(sgs, random);
+            assertThat(sgs.getAvailableMoves()).contains(move);
+            assertThat(table.distance(9, destination(move))).isGreaterThan(1);
+        }
+    }
+
+    @Test
+    public void TestGreedyPlayoutMovesMrXFurthestFromDetective() throws IOException {
+        SimulationGameState sgs = mrXNextToDetective();
+        DistanceTable table = DistanceTable.of(sgs.getCompactState().getGraph(), DistanceTable.Variant.DIJKSTRA);
+        int furthest = sgs.getAvailableMoves().stream().filter(move -> move instanceof Move.SingleMove)
+                .mapToInt(move -> table.distance(9, destination(move))).max().orElseThrow();
+
+        Move move = new EpsilonGreedyPlayout(0).chooseMove(sgs, new SplittableRandom(1));
+
+        assertThat(table.distance(9, destination(move))).isEqualTo(furthest);
+    }
+
+    @Test
+    public void TestGreedyPlayoutKeepsDoubleTicketWhenSingleMoveIsAsSafe() throws IOException {
+        SimulationGameState sgs = mrXNextToDetective();
+        DistanceTable table = DistanceTable.of(sgs.getCompactState().getGraph(), DistanceTable.Variant.DIJKSTRA);
+        int furthestSingle = sgs.getAvailableMoves().stream().filter(move -> move instanceof Move.SingleMove)
+                .mapToInt(move -> table.distance(9, destination(move))).max().orElseThrow();
+        int furthestDouble = sgs.getAvailableMoves().stream().filter(move -> move instanceof Move.DoubleMove)
+                .mapToInt(move -> table.distance(9, destination(move))).max().orElseThrow();
+        // A double move gets one move further away, which is all that its extra ticket buys
+        assertThat(furthestDouble).isEqualTo(furthestSingle + 1);
+
+        EpsilonGreedyPlayout policy = new EpsilonGreedyPlayout(0);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 20; i++) {
+            assertThat(policy.chooseMove(sgs, random)).isInstanceOf(Move.SingleMove.class);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.Dijkstra;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.GreedyAStar;
+import uk.ac.bris.cs.scotlandyard.ui.ai.distancestrategies.PrecomputedDistance;
+import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+public class PrecomputedDistanceTests {
+
+    private SimulationGameState makeGameState() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 10);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        return new SimulationGameState(g);
+    }
+
+    @Test
+    public void TestPrecomputedDistanceMatchesDijkstra() throws IOException {
+        SimulationGameState sgs = makeGameState();
+        PrecomputedDistance table = new PrecomputedDistance(DistanceTable.Variant.DIJKSTRA);
+        Dijkstra dijkstra = new Dijkstra();
+
+        for (int source = 1; source <= 199; source += 7) {
+            for (int destination = 1; destination <= 199; destination += 3) {
+                assertThat(table.findDistance(source, destination, sgs))
+                        .isEqualTo(dijkstra.findDistance(source, destination, sgs));
+            }
+        }
+    }
+
+    @Test
+    public void TestPrecomputedDistanceMatchesGreedyAStar() throws IOException {
+        SimulationGameState sgs = makeGameState();
+        PrecomputedDistance table = new PrecomputedDistance(DistanceTable.Variant.GREEDY_A_STAR);
+        GreedyAStar greedyAStar = new GreedyAStar();
+
+        for (int source = 1; source <= 199; source += 7) {
+            for (int destination = 1; destination <= 199; destination += 3) {
+                assertThat(table.findDistance(source, destination, sgs))
+                        .isEqualTo(greedyAStar.findDistance(source, destination, sgs));
+            }
+        }
+    }
+}
@@ -6,6 +6,9 @@ import uk.ac.bris.cs.scotlandyard.model.*;
 import uk.ac.bris.cs.scotlandyard.ui.ai.simgamestate.SimulationGameState;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import static org.testfx.assertions.api.Assertions.assertThat;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
@@ -44,4 +47,70 @@ public class SimulationGameStateTests {
         
     }
 
+    @Test
+    public void TestSimulationGameStateApplyAndUndoRestoreState() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 10);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+
+        SimulationGameState sgs = new SimulationGameState(g);
+        SimulationGameState original = sgs.copy(sgs);
+
+        // Play a double move for Mr X and a reply for the detective, then take both back
+        Move mrXMove = sgs.getAvailableMoves().stream().filter(m -> m instanceof Move.DoubleMove).findFirst().orElseThrow();
+        sgs.apply(mrXMove);
+        Move detectiveMove = sgs.getAvailableMoves().stream().findFirst().orElseThrow();
+        sgs.apply(detectiveMove);
+
+        assertThat(sgs.getMrXLog().size()).isEqualTo(2);
+        assertThat(sgs.getMrX().tickets().get(Ticket.DOUBLE)).isEqualTo(1);
+
+        sgs.undo();
+        sgs.undo();
+
+        assertThat(sgs.getAvailableMoves()).isEqualTo(original.getAvailableMoves());
+        assertThat(sgs.getMrXLog()).isEqualTo(original.getMrXLog());
+        assertThat(sgs.getMrX().location()).isEqualTo(original.getMrX().location());
+        assertThat(sgs.getMrX().tickets()).isEqualTo(original.getMrX().tickets());
+        assertThat(sgs.getDetectives().get(0).location()).isEqualTo(original.getDetectives().get(0).location());
+        assertThat(sgs.getDetectives().get(0).tickets()).isEqualTo(original.getDetectives().get(0).tickets());
+        assertThat(sgs.previousTurnWasMrX).isEqualTo(original.previousTurnWasMrX);
+    }
+
+
+    @Test
+    public void TestSimulationGameStateStreamsMovesLazily() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 10);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+        SimulationGameState board = new SimulationGameState(g);
+        Move first = board.getAvailableMoves().stream().filter(m -> m instanceof Move.SingleMove).findFirst().orElseThrow();
+        SimulationGameState sgs = board.copy(board).advance(first);
+
+        // A copy whose move set has not been built streams the same moves in the same order
+        List<Move> streamed = new ArrayList<>();
+        sgs.copy(sgs).getAvailableMoves(m -> true).forEachRemaining(streamed::add);
+        assertThat(streamed).isEqualTo(new ArrayList<>(sgs.getAvailableMoves()));
+
+        // Moves are checked against the rules without building the set, which must agree with it
+        Move detectiveMove = streamed.get(0);
+        Move notAdjacent = new Move.SingleMove(Piece.Detective.RED, 10, Ticket.TAXI, 200);
+        assertThat(sgs.getCompactState().isAvailable(detectiveMove)).isTrue();
+        assertThat(sgs.getCompactState().isAvailable(notAdjacent)).isFalse();
+    }
+
+    @Test
+    public void TestSimulationGameStateKnowsGameIsOverWithoutAskingForWinner() throws IOException {
+        Player mrX = new Player(MRX, defaultMrXTickets(), 1);
+        Player detective = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 10);
+        Board.GameState g = MyGameStateFactory.a(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES), mrX, ImmutableList.of(detective));
+
+        // The detective is standing on Mr X, so the game is over before anyone moves
+        Player caughtBy = new Player(Piece.Detective.RED, defaultDetectiveTickets(), 1);
+        SimulationGameState caught = new SimulationGameState(List.of(), Set.of(mrX), List.of(caughtBy), mrX, g, false);
+
+        assertThat(caught.getAvailableMoves()).isEmpty();
+        assertThat(caught.getWinner()).isEqualTo(Set.of(Piece.Detective.RED));
+        assertThat(caught.getWinner()).isSameAs(caught.getWinner());
+    }
 }